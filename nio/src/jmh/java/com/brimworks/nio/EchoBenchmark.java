@@ -0,0 +1,114 @@
+package com.brimworks.nio;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Round trip of a batch of pipelined messages over a loopback TCP connection,
+ * where both ends are {@link Connection}s of one event loop. The server
+ * echoes each message with its own {@link Connection#write(ByteBuffer)}, so
+ * without write coalescing each message costs a write syscall, with write
+ * coalescing the batch costs one gathering write.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EchoBenchmark {
+    private static final int MESSAGE_SIZE = 64;
+
+    @Param({"false", "true"})
+    public boolean writeCoalescing;
+
+    @Param({"1", "16"})
+    public int messages;
+
+    private EventLoop loop;
+    private Connection client;
+    private Connection server;
+    private ByteBuffer request;
+    private ByteBuffer[] responses;
+    private int received;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        SocketChannel clientChannel;
+        SocketChannel serverChannel;
+        try (ServerSocketChannel listener = ServerSocketChannel.open()) {
+            listener.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            clientChannel = SocketChannel.open(listener.getLocalAddress());
+            serverChannel = listener.accept();
+        }
+        // Otherwise Nagle's algorithm delays the small eager writes:
+        clientChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        serverChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        loop = new EventLoop();
+        request = ByteBuffer.allocateDirect(messages * MESSAGE_SIZE);
+        responses = new ByteBuffer[messages];
+        for (int i = 0; i < messages; i++) {
+            responses[i] = ByteBuffer.allocateDirect(MESSAGE_SIZE);
+        }
+        int inboundCapacity = 64 * 1024;
+        server = loop.connection(1, serverChannel, inboundCapacity, inboundCapacity)
+            .writeCoalescing(writeCoalescing)
+            .onRead(c -> {
+                RingByteBuffer inbound = c.inbound();
+                // Messages are consumed from the batch, so only one response
+                // buffer is in use per message:
+                for (int i = 0; inbound.size() >= MESSAGE_SIZE; i = (i + 1) % messages) {
+                    ByteBuffer response = responses[i];
+                    response.clear();
+                    inbound.getAll(response);
+                    response.flip();
+                    c.write(response);
+                }
+            })
+            .start();
+        client = loop.connection(1, clientChannel, inboundCapacity, inboundCapacity)
+            .onRead(c -> {
+                received += c.inbound().size();
+                c.inbound().clear();
+                if (received == messages * MESSAGE_SIZE) {
+                    loop.breakOne();
+                }
+            })
+            .start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+        loop.close();
+    }
+
+    @Benchmark
+    public int roundTrip() throws IOException {
+        received = 0;
+        request.clear();
+        client.write(request);
+        loop.run();
+        return received;
+    }
+}
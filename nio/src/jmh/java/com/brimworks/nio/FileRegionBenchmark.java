@@ -0,0 +1,129 @@
+package com.brimworks.nio;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of sending a file over a loopback socket from an event loop,
+ * which also reads (and discards) the bytes on the other end. The copy mode
+ * reads the file through a {@link RingByteBuffer} into the socket, the
+ * transferTo mode queues a file region in a {@link WriteQueue}, which uses
+ * sendfile on Linux. Each operation sends the whole file, so divide the file
+ * size by the score for the throughput.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FileRegionBenchmark {
+    @Param({"copy", "transferTo"})
+    public String mode;
+
+    @Param({"16777216"})
+    public int fileSize;
+
+    private Path path;
+    private FileChannel file;
+    private SocketChannel sink;
+    private SocketChannel source;
+    private EventLoop loop;
+    private IOWatcher writer;
+    private IOWatcher reader;
+    private final RingByteBuffer ring = RingByteBuffer.allocate(64 * 1024);
+    private final WriteQueue queue = new WriteQueue();
+    private final ByteBuffer input = ByteBuffer.allocateDirect(64 * 1024);
+    private boolean isTransferTo;
+    private long received;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        path = Files.createTempFile("file-region", ".bin");
+        Files.write(path, new byte[fileSize]);
+        file = FileChannel.open(path);
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            sink = SocketChannel.open(server.getLocalAddress());
+            source = server.accept();
+        }
+        sink.configureBlocking(false);
+        source.configureBlocking(false);
+        loop = new EventLoop();
+        isTransferTo = "transferTo".equals(mode);
+        writer = loop.ioWatcher(1, sink)
+            .callback(w -> {
+                if (isTransferTo) {
+                    queue.flush(sink);
+                    if (queue.isEmpty()) {
+                        w.stop();
+                    }
+                } else {
+                    if (file.position() < fileSize) {
+                        ring.readFrom(file);
+                    }
+                    ring.writeTo(sink);
+                    if (ring.isEmpty() && file.position() == fileSize) {
+                        w.stop();
+                    }
+                }
+            })
+            .interestOps(IOWatcher.Operation.WRITE);
+        reader = loop.ioWatcher(1, source)
+            .callback(w -> {
+                int count;
+                while ((count = source.read(input)) > 0) {
+                    received += count;
+                    input.clear();
+                }
+                if (received == fileSize) {
+                    w.stop();
+                }
+            })
+            .interestOps(IOWatcher.Operation.READ);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        sink.close();
+        source.close();
+        loop.close();
+        file.close();
+        Files.delete(path);
+    }
+
+    @Benchmark
+    public long send() throws IOException {
+        received = 0;
+        if (isTransferTo) {
+            queue.add(file, 0, fileSize);
+        } else {
+            file.position(0);
+        }
+        writer.start();
+        reader.start();
+        loop.run();
+        return received;
+    }
+}
@@ -0,0 +1,114 @@
+package com.brimworks.nio;
+
+import java.io.IOException;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the interest ops changes of one loop iteration of a write-heavy
+ * handler, which enables WRITE when a write is partial and disables it once
+ * drained, several times per iteration. The direct benchmark updates the
+ * selection key on each change (the behavior before updates were deferred),
+ * the deferred benchmark records the changes on the {@link IOWatcher} and
+ * applies the final state once, as the event loop does before select.
+ *
+ * In the direct and deferred benchmarks the changes cancel out, so the
+ * deferred update never touches the key. The changed variants end each
+ * iteration with one more change, alternating WRITE on and off, so the final
+ * state always differs from the applied state and the key is updated once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InterestOpsBenchmark {
+    private static final int WRITE = IOWatcher.Operation.WRITE.getCode();
+
+    @Param({"1", "8"})
+    public int togglesPerIteration;
+
+    private EventLoop loop;
+    private Pipe pipe;
+    private IOWatcher watcher;
+    private SelectionKey key;
+    // Interest ops after the next changed iteration:
+    private int nextOps = WRITE;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        loop = new EventLoop();
+        pipe = Pipe.open();
+        pipe.sink().configureBlocking(false);
+        watcher = loop.ioWatcher(1, pipe.sink())
+            .interestOps(WRITE)
+            .start()
+            .interestOps(0);
+        loop.applyInterestOps();
+        key = watcher.selectionKey();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        pipe.sink().close();
+        pipe.source().close();
+        loop.close();
+    }
+
+    @Benchmark
+    public int direct() {
+        for (int i = 0; i < togglesPerIteration; i++) {
+            key.interestOps(WRITE);
+            key.interestOps(0);
+        }
+        return key.interestOps();
+    }
+
+    @Benchmark
+    public int deferred() {
+        for (int i = 0; i < togglesPerIteration; i++) {
+            watcher.interestOps(WRITE);
+            watcher.interestOps(0);
+        }
+        loop.applyInterestOps();
+        return key.interestOps();
+    }
+
+    @Benchmark
+    public int directChanged() {
+        for (int i = 0; i < togglesPerIteration; i++) {
+            key.interestOps(WRITE);
+            key.interestOps(0);
+        }
+        key.interestOps(nextOps);
+        nextOps ^= WRITE;
+        return key.interestOps();
+    }
+
+    @Benchmark
+    public int deferredChanged() {
+        for (int i = 0; i < togglesPerIteration; i++) {
+            watcher.interestOps(WRITE);
+            watcher.interestOps(0);
+        }
+        watcher.interestOps(nextOps);
+        nextOps ^= WRITE;
+        loop.applyInterestOps();
+        return key.interestOps();
+    }
+}
@@ -0,0 +1,129 @@
+package com.brimworks.nio;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Round trip of a message over a same-host socket pair, via loopback TCP or a
+ * Unix domain socket. Both ends are IOWatchers of one event loop, using the
+ * {@link RingByteBuffer} read/write path: the client writes size bytes, and
+ * the server echoes them back. Small sizes measure latency, large sizes
+ * throughput.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LocalSocketBenchmark {
+    @Param({"tcp", "unix"})
+    public String transport;
+
+    @Param({"64", "262144"})
+    public int size;
+
+    private Path dir;
+    private SocketChannel client;
+    private SocketChannel server;
+    private EventLoop loop;
+    private IOWatcher clientWatcher;
+    private RingByteBuffer clientBuffer;
+    private ByteBuffer message;
+    private int received;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        ServerSocketChannel listener;
+        if ("unix".equals(transport)) {
+            dir = Files.createTempDirectory("nio");
+            listener = ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+                .bind(UnixDomainSocketAddress.of(dir.resolve("bench.sock")));
+        } else {
+            listener = ServerSocketChannel.open()
+                .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        }
+        try (listener) {
+            client = SocketChannel.open(listener.getLocalAddress());
+            server = listener.accept();
+        }
+        client.configureBlocking(false);
+        server.configureBlocking(false);
+        loop = new EventLoop();
+        message = ByteBuffer.allocateDirect(size);
+        clientBuffer = RingByteBuffer.allocate(64 * 1024);
+        RingByteBuffer serverBuffer = RingByteBuffer.allocate(64 * 1024);
+        IOWatcher serverWatcher = loop.ioWatcher(1, server);
+        serverWatcher.callback(w -> {
+                if (w.isReadable()) {
+                    serverBuffer.readFrom(server);
+                }
+                serverBuffer.writeTo(server);
+                w.interestOps(serverBuffer.isEmpty() ?
+                    IOWatcher.Operation.READ.getCode() :
+                    IOWatcher.Operation.WRITE.getCode());
+            })
+            .interestOps(IOWatcher.Operation.READ)
+            .start();
+        clientWatcher = loop.ioWatcher(1, client);
+        clientWatcher.callback(w -> {
+                if (w.isWritable()) {
+                    client.write(message);
+                    if (!message.hasRemaining()) {
+                        w.interestOps(IOWatcher.Operation.READ);
+                    }
+                }
+                if (w.isReadable()) {
+                    received += (int) clientBuffer.readFrom(client);
+                    clientBuffer.clear();
+                    if (received == size) {
+                        w.stop();
+                        loop.breakOne();
+                    }
+                }
+            });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+        loop.close();
+        if (null != dir) {
+            Files.deleteIfExists(dir.resolve("bench.sock"));
+            Files.delete(dir);
+        }
+    }
+
+    @Benchmark
+    public int roundTrip() throws IOException {
+        received = 0;
+        message.clear();
+        clientWatcher.interestOps(IOWatcher.Operation.READ, IOWatcher.Operation.WRITE)
+            .start();
+        loop.run();
+        return received;
+    }
+}
@@ -0,0 +1,93 @@
+package com.brimworks.nio;
+
+import java.io.IOException;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the {@link PendingQueue} used by {@link EventLoop} with the
+ * {@link PriorityQueue} it replaced. Each operation queues a batch of ready
+ * watchers (as a loop iteration would), stops a quarter of them while they are
+ * pending, then drains the rest.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PendingQueueBenchmark {
+    @Param({"16", "256", "4096"})
+    public int batchSize;
+
+    @Param({"3"})
+    public int priorities;
+
+    private EventLoop loop;
+    private Watcher[] watchers;
+    private Watcher[] stopped;
+    private PendingQueue pendingQueue = new PendingQueue();
+    private PriorityQueue<Watcher> priorityQueue = new PriorityQueue<>();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        loop = new EventLoop();
+        Random random = new Random(42);
+        watchers = new Watcher[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            watchers[i] = loop.timer(random.nextInt(priorities));
+        }
+        stopped = new Watcher[batchSize / 4];
+        for (int i = 0; i < stopped.length; i++) {
+            stopped[i] = watchers[random.nextInt(batchSize)];
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        loop.close();
+    }
+
+    @Benchmark
+    public void pendingQueue(Blackhole blackhole) {
+        for (Watcher watcher : watchers) {
+            pendingQueue.add(watcher);
+        }
+        for (Watcher watcher : stopped) {
+            pendingQueue.remove(watcher);
+        }
+        Watcher watcher;
+        while (null != (watcher = pendingQueue.poll())) {
+            blackhole.consume(watcher);
+        }
+    }
+
+    @Benchmark
+    public void priorityQueue(Blackhole blackhole) {
+        for (Watcher watcher : watchers) {
+            priorityQueue.add(watcher);
+        }
+        for (Watcher watcher : stopped) {
+            priorityQueue.remove(watcher);
+        }
+        Watcher watcher;
+        while (null != (watcher = priorityQueue.poll())) {
+            blackhole.consume(watcher);
+        }
+    }
+}
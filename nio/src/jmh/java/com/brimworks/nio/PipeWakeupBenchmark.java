@@ -0,0 +1,92 @@
+package com.brimworks.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Wakeup latency of a pipe-driven {@link IOWatcher}: the benchmark thread
+ * writes a byte to a pipe and waits for the event loop thread to read it. With
+ * spinMicros=0 the loop is blocked in select when the byte arrives, otherwise
+ * it is (usually) busy-polling. Sample mode reports the p50/p99 latencies.
+ *
+ * Spinning only pays off when the loop thread has a core to itself, so run this
+ * on a machine with at least two idle cores.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PipeWakeupBenchmark {
+    @Param({"0", "100"})
+    public long spinMicros;
+
+    private EventLoop loop;
+    private Thread loopThread;
+    private Pipe pipe;
+    private final ByteBuffer output = ByteBuffer.allocate(1);
+    private final ByteBuffer input = ByteBuffer.allocate(64);
+    private volatile long received = 0;
+    private long sent = 0;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        loop = new EventLoop().spinMicros(spinMicros);
+        pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+        loop.ioWatcher(1, pipe.source())
+            .callback(w -> {
+                input.clear();
+                int count = pipe.source().read(input);
+                if (count > 0) {
+                    received += count;
+                }
+            })
+            .interestOps(IOWatcher.Operation.READ)
+            .start();
+        loopThread = new Thread(() -> {
+            try {
+                loop.run();
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }, "event-loop");
+        loopThread.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        loop.execute(loop::breakAll);
+        loopThread.join();
+        pipe.sink().close();
+        pipe.source().close();
+        loop.close();
+    }
+
+    @Benchmark
+    public long wakeup() throws IOException {
+        output.clear();
+        pipe.sink().write(output);
+        sent++;
+        while (received != sent) {
+            Thread.onSpinWait();
+        }
+        return sent;
+    }
+}
@@ -0,0 +1,100 @@
+package com.brimworks.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.Pipe;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of dispatching a burst of readiness events with many idle channels
+ * registered with the default {@link java.nio.channels.Selector}. Each
+ * operation writes one byte to each hot pipe, then runs the loop until every
+ * hot IOWatcher read its byte. Idle channels are unbound DatagramChannels
+ * with READ interest, which never become ready and cost one file descriptor
+ * each (a pipe or connected socket costs two).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SelectorScaleBenchmark {
+    @Param({"0", "10000"})
+    public int idle;
+
+    @Param({"1000"})
+    public int hot;
+
+    private EventLoop loop;
+    private DatagramChannel[] idleChannels;
+    private Pipe[] hotPipes;
+    private final ByteBuffer input = ByteBuffer.allocateDirect(16);
+    private final ByteBuffer output = ByteBuffer.allocateDirect(1);
+    private int received;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        loop = new EventLoop();
+        idleChannels = new DatagramChannel[idle];
+        for (int i = 0; i < idle; i++) {
+            idleChannels[i] = DatagramChannel.open();
+            idleChannels[i].configureBlocking(false);
+            loop.ioWatcher(1, idleChannels[i])
+                .interestOps(IOWatcher.Operation.READ)
+                .start();
+        }
+        hotPipes = new Pipe[hot];
+        for (int i = 0; i < hot; i++) {
+            Pipe pipe = hotPipes[i] = Pipe.open();
+            pipe.source().configureBlocking(false);
+            loop.ioWatcher(1, pipe.source())
+                .callback(w -> {
+                    input.clear();
+                    pipe.source().read(input);
+                    if (++received == hot) {
+                        loop.breakOne();
+                    }
+                })
+                .interestOps(IOWatcher.Operation.READ)
+                .start();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (DatagramChannel channel : idleChannels) {
+            channel.close();
+        }
+        for (Pipe pipe : hotPipes) {
+            pipe.sink().close();
+            pipe.source().close();
+        }
+        loop.close();
+    }
+
+    @Benchmark
+    public int burst() throws IOException {
+        received = 0;
+        for (Pipe pipe : hotPipes) {
+            output.clear();
+            pipe.sink().write(output);
+        }
+        loop.run();
+        return received;
+    }
+}
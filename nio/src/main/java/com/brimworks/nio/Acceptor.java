@@ -0,0 +1,401 @@
+package com.brimworks.nio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Accepts TCP connections on behalf of an {@link EventLoopGroup}, so accepted
+ * channels are spread over all of its event loops:
+ *
+ * <ul>
+ * <li>With {@link #reusePort(boolean)} (the default where
+ *     {@link #isReusePortSupported()}), each event loop binds its own
+ *     listening socket to the same address with SO_REUSEPORT, and the kernel
+ *     load balances incoming connections between them. There is no hand-off,
+ *     so accepts scale with the number of loops.</li>
+ * <li>Otherwise the first event loop accepts, and hands each channel to the
+ *     event loop picked by the group's {@link ChannelAssignment}.</li>
+ * </ul>
+ *
+ * The address may also be a {@link UnixDomainSocketAddress} for local IPC
+ * without the TCP stack, which always uses hand-off. The socket file is
+ * deleted on {@link #close()}, but a stale file of a previous process must be
+ * deleted before {@link #start()}.
+ *
+ * Each ACCEPT readiness event accepts connections until none are pending, up
+ * to {@link #maxAcceptsPerWakeup(int)} so other watchers are not starved
+ * during a connection storm (the listening socket stays ready, so the rest are
+ * accepted on the next loop iteration).
+ *
+ * Accept errors (for example EMFILE when out of file descriptors) and
+ * handler errors are reported to {@link #onError(Callback)} rather than
+ * thrown out of the event loop. After an accept error the listening socket
+ * stays ready, so accepting is paused for {@link #acceptBackoffMillis(long)}
+ * instead of spinning on the error.
+ *
+ * Typical usage:
+ * <pre>
+ * Acceptor acceptor = new Acceptor(group, new InetSocketAddress(8080))
+ *     .handler((loop, channel) -&gt; loop.connection(0, channel, 4096, 65536)
+ *         .onRead(...)
+ *         .start())
+ *     .start();
+ * </pre>
+ */
+public class Acceptor implements Closeable {
+    @FunctionalInterface
+    public interface Handler {
+        /**
+         * @param loop is the event loop which owns the channel, this is called
+         *     on its thread.
+         * @param channel is the accepted channel, in non-blocking mode.
+         * @throws IOException if the channel could not be setup.
+         */
+        void accept(EventLoop loop, SocketChannel channel) throws IOException;
+    }
+
+    private class Listener {
+        private final EventLoop loop;
+        private final ServerSocketChannel server;
+        private final boolean isHandOff;
+        private IOWatcher watcher;
+        // Restarts the watcher after an accept error:
+        private Timer backoff;
+
+        private Listener(EventLoop loop, ServerSocketChannel server, boolean isHandOff) {
+            this.loop = loop;
+            this.server = server;
+            this.isHandOff = isHandOff;
+        }
+
+        private void accept() throws IOException {
+            for (int i = 0; i < maxAcceptsPerWakeup; i++) {
+                SocketChannel channel;
+                try {
+                    channel = server.accept();
+                } catch (ClosedChannelException ex) {
+                    // Closed by another thread, the watcher is stopped by a task.
+                    return;
+                } catch (IOException ex) {
+                    watcher.stop();
+                    backoff.afterMillis(acceptBackoffMillis).start();
+                    onError.accept(ex);
+                    return;
+                }
+                if (null == channel) {
+                    return;
+                }
+                if (isHandOff) {
+                    group.assign(channel, target -> handle(target, channel));
+                } else {
+                    handle(loop, channel);
+                }
+            }
+        }
+
+        private void resume() {
+            if (server.isOpen()) {
+                watcher.start();
+            }
+        }
+    }
+
+    private final EventLoopGroup group;
+    private final SocketAddress address;
+    private final List<Listener> listeners = new ArrayList<>();
+    private int priority = 0;
+    private int backlog = 0;
+    private int maxAcceptsPerWakeup = 256;
+    private boolean isReusePort = isReusePortSupported();
+    private long acceptBackoffMillis = 100;
+    private Handler handler = (loop, channel) -> channel.close();
+    private Callback<IOException> onError = ex -> {
+        Thread thread = Thread.currentThread();
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, ex);
+    };
+
+    /**
+     * @param group is the group of event loops which own accepted channels.
+     * @param address is the address to listen on, with port 0 an ephemeral
+     *     port is picked, see {@link #localAddress()}.
+     */
+    public Acceptor(EventLoopGroup group, SocketAddress address) {
+        if (null == group || null == address) {
+            throw new IllegalArgumentException("group and address must be non-null");
+        }
+        this.group = group;
+        this.address = address;
+    }
+
+    /**
+     * @return true if SO_REUSEPORT load balances connections between
+     *     listening sockets, which is the case on Linux 3.9+.
+     */
+    public static boolean isReusePortSupported() {
+        if (!System.getProperty("os.name", "").startsWith("Linux")) {
+            return false;
+        }
+        try (ServerSocketChannel channel = ServerSocketChannel.open()) {
+            return channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    public Acceptor handler(Handler handler) {
+        if (null == handler) {
+            throw new IllegalArgumentException("handler must be non-null");
+        }
+        this.handler = handler;
+        return this;
+    }
+
+    public Handler handler() {
+        return handler;
+    }
+
+    /**
+     * @param onError is called on an event loop thread with each accept error,
+     *     and each error of the handler (after the channel is closed). The
+     *     default passes the error to the thread's uncaught exception handler.
+     * @return this for method chaining.
+     */
+    public Acceptor onError(Callback<IOException> onError) {
+        if (null == onError) {
+            throw new IllegalArgumentException("onError must be non-null");
+        }
+        this.onError = onError;
+        return this;
+    }
+
+    /**
+     * @param acceptBackoffMillis is how long accepting on a listening socket
+     *     is paused after an accept error.
+     * @return this for method chaining.
+     */
+    public Acceptor acceptBackoffMillis(long acceptBackoffMillis) {
+        if (acceptBackoffMillis <= 0) {
+            throw new IllegalArgumentException("acceptBackoffMillis must be positive, got " + acceptBackoffMillis);
+        }
+        this.acceptBackoffMillis = acceptBackoffMillis;
+        return this;
+    }
+
+    public long acceptBackoffMillis() {
+        return acceptBackoffMillis;
+    }
+
+    /**
+     * @param priority of the listening sockets' IOWatchers.
+     * @return this for method chaining.
+     */
+    public Acceptor priority(int priority) {
+        checkNotStarted("priority");
+        this.priority = priority;
+        return this;
+    }
+
+    public int priority() {
+        return priority;
+    }
+
+    /**
+     * @param backlog is the maximum pending connections of each listening
+     *     socket, or 0 for the system default.
+     * @return this for method chaining.
+     */
+    public Acceptor backlog(int backlog) {
+        checkNotStarted("backlog");
+        if (backlog < 0) {
+            throw new IllegalArgumentException("backlog must be non-negative, got " + backlog);
+        }
+        this.backlog = backlog;
+        return this;
+    }
+
+    public int backlog() {
+        return backlog;
+    }
+
+    /**
+     * @param maxAcceptsPerWakeup is the maximum connections accepted per
+     *     readiness event of a listening socket.
+     * @return this for method chaining.
+     */
+    public Acceptor maxAcceptsPerWakeup(int maxAcceptsPerWakeup) {
+        if (maxAcceptsPerWakeup <= 0) {
+            throw new IllegalArgumentException("maxAcceptsPerWakeup must be positive, got " + maxAcceptsPerWakeup);
+        }
+        this.maxAcceptsPerWakeup = maxAcceptsPerWakeup;
+        return this;
+    }
+
+    public int maxAcceptsPerWakeup() {
+        return maxAcceptsPerWakeup;
+    }
+
+    /**
+     * @param reusePort is true to bind a listening socket per event loop with
+     *     SO_REUSEPORT, or false to accept on one event loop and hand off.
+     *     Ignored for Unix domain socket addresses.
+     * @return this for method chaining.
+     */
+    public Acceptor reusePort(boolean reusePort) {
+        checkNotStarted("reusePort");
+        this.isReusePort = reusePort;
+        return this;
+    }
+
+    public boolean reusePort() {
+        return isReusePort;
+    }
+
+    /**
+     * Thread-safe.
+     *
+     * @return the bound address of the listening sockets.
+     * @throws IOException if the socket is closed.
+     */
+    public synchronized SocketAddress localAddress() throws IOException {
+        if (listeners.isEmpty()) {
+            throw new IllegalStateException("Attempt to get the local address of an Acceptor which is not started");
+        }
+        return listeners.get(0).server.getLocalAddress();
+    }
+
+    /**
+     * Thread-safe. Bind the listening sockets, then start accepting on the
+     * event loops' threads (once the group is started).
+     *
+     * @return this for method chaining.
+     * @throws IOException if a listening socket could not be bound, any
+     *     already bound are closed.
+     */
+    public synchronized Acceptor start() throws IOException {
+        if (!listeners.isEmpty()) {
+            throw new IllegalStateException("Attempt to start an Acceptor which is already started");
+        }
+        boolean isUnix = address instanceof UnixDomainSocketAddress;
+        boolean isReusePort = this.isReusePort && !isUnix;
+        int count = isReusePort ? group.size() : 1;
+        SocketAddress bindAddress = address;
+        try {
+            for (int i = 0; i < count; i++) {
+                ServerSocketChannel server = isUnix ?
+                    ServerSocketChannel.open(StandardProtocolFamily.UNIX) :
+                    ServerSocketChannel.open();
+                listeners.add(new Listener(group.eventLoop(i), server, !isReusePort));
+                if (isReusePort) {
+                    server.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                }
+                server.configureBlocking(false);
+                server.bind(bindAddress, backlog);
+                // So an ephemeral port is shared by all listening sockets:
+                bindAddress = server.getLocalAddress();
+            }
+        } catch (IOException|RuntimeException ex) {
+            closeListeners(ex);
+            throw ex;
+        }
+        for (Listener listener : listeners) {
+            listener.loop.execute(() -> {
+                try {
+                    listener.watcher = listener.loop.ioWatcher(priority, listener.server)
+                        .callback(w -> listener.accept())
+                        .interestOps(IOWatcher.Operation.ACCEPT)
+                        .start();
+                    listener.backoff = listener.loop.timer(priority)
+                        .callback(t -> listener.resume());
+                } catch (ClosedChannelException ex) {
+                    // Closed before the event loop registered it.
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        }
+        return this;
+    }
+
+    /**
+     * Thread-safe. Close the listening sockets, accepted channels are not
+     * affected. The acceptor may be started again.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        IOException error = closeListeners(null);
+        if (null != error) {
+            throw error;
+        }
+    }
+
+    private IOException closeListeners(Exception cause) {
+        IOException error = null;
+        for (Listener listener : listeners) {
+            try {
+                SocketAddress local = listener.server.getLocalAddress();
+                listener.server.close();
+                if (local instanceof UnixDomainSocketAddress) {
+                    Files.deleteIfExists(((UnixDomainSocketAddress) local).getPath());
+                }
+            } catch (IOException ex) {
+                if (null != cause) {
+                    cause.addSuppressed(ex);
+                } else if (null == error) {
+                    error = ex;
+                } else {
+                    error.addSuppressed(ex);
+                }
+            }
+            // The watcher is only accessed on its event loop's thread:
+            listener.loop.execute(() -> {
+                if (null != listener.watcher) {
+                    listener.watcher.stop();
+                    listener.backoff.stop();
+                }
+            });
+        }
+        listeners.clear();
+        return error;
+    }
+
+    /**
+     * Pass an accepted channel to the handler, closing it if that fails.
+     */
+    private void handle(EventLoop loop, SocketChannel channel) throws IOException {
+        try {
+            channel.configureBlocking(false);
+            handler.accept(loop, channel);
+        } catch (IOException ex) {
+            closeQuietly(channel, ex);
+            onError.accept(ex);
+        } catch (RuntimeException ex) {
+            closeQuietly(channel, ex);
+            throw ex;
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel, Exception cause) {
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            cause.addSuppressed(ex);
+        }
+    }
+
+    private void checkNotStarted(String name) {
+        if (!listeners.isEmpty()) {
+            throw new IllegalStateException("Attempt to set " + name + " when acceptor is already started");
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.brimworks.nio;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Strategy used by an {@link EventLoopGroup} to pick which {@link EventLoop}
+ * a channel is registered with. Implementations must be thread-safe.
+ */
+@FunctionalInterface
+public interface ChannelAssignment {
+    /**
+     * @param group is the group of event loops to choose from.
+     * @param key is the key passed to {@link EventLoopGroup#ioWatcher(Object, int, java.nio.channels.SelectableChannel, Callback)},
+     *     or the channel itself if no key was specified.
+     * @return the index of the event loop to use, between 0 (inclusive) and
+     *     {@link EventLoopGroup#size()} (exclusive).
+     */
+    int choose(EventLoopGroup group, Object key);
+
+    /**
+     * @return a strategy which cycles through the event loops in order.
+     */
+    static ChannelAssignment roundRobin() {
+        AtomicInteger next = new AtomicInteger();
+        return (group, key) -> Math.floorMod(next.getAndIncrement(), group.size());
+    }
+
+    /**
+     * @return a strategy which picks the event loop with the fewest channels,
+     *     see {@link EventLoopGroup#channelCount(int)}. Ties are broken by
+     *     picking the lowest index.
+     */
+    static ChannelAssignment leastConnections() {
+        return (group, key) -> {
+            int best = 0;
+            int bestCount = Integer.MAX_VALUE;
+            for (int i = 0; i < group.size(); i++) {
+                int count = group.channelCount(i);
+                if (count < bestCount) {
+                    best = i;
+                    bestCount = count;
+                }
+            }
+            return best;
+        };
+    }
+
+    /**
+     * @return a strategy which always picks the same event loop for equal keys,
+     *     so that all channels related to the same key (for example a user or
+     *     session) share state owned by a single event loop.
+     */
+    static ChannelAssignment hashOfKey() {
+        return (group, key) -> {
+            int hash = null == key ? 0 : key.hashCode();
+            // Spread the high bits, since hashCode() is often poor in the low bits:
+            hash ^= (hash >>> 16);
+            return Math.floorMod(hash, group.size());
+        };
+    }
+}
@@ -0,0 +1,60 @@
+package com.brimworks.nio;
+
+import java.io.IOException;
+
+/**
+ * Runs once per loop iteration, just after the event loop polls for I/O (along
+ * with any ready IOWatchers and expired Timers, in priority order). Use this to
+ * process results accumulated by the I/O callbacks of this iteration.
+ *
+ * An active CheckWatcher does not keep the event loop running by itself.
+ */
+public class CheckWatcher extends Watcher {
+    private boolean isActive = false;
+    private Callback<CheckWatcher> callback = w -> {};
+
+    protected CheckWatcher(EventLoop loop, int priority) {
+        super(loop, priority);
+    }
+
+    public CheckWatcher callback(Callback<CheckWatcher> callback) {
+        if (null == callback) {
+            throw new IllegalArgumentException("callback must be non-null");
+        }
+        this.callback = callback;
+        return this;
+    }
+
+    public Callback<CheckWatcher> callback() {
+        return this.callback;
+    }
+
+    public boolean isActive() {
+        return isActive;
+    }
+
+    @Override
+    public CheckWatcher start() {
+        if (!isActive) {
+            eventLoop().add(this);
+            isActive = true;
+        }
+        return this;
+    }
+
+    @Override
+    public CheckWatcher stop() {
+        if (isActive) {
+            eventLoop().remove(this);
+            isActive = false;
+        }
+        return this;
+    }
+
+    @Override
+    public void run() throws IOException {
+        if (isActive) {
+            callback.accept(this);
+        }
+    }
+}
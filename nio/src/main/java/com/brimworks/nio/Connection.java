@@ -0,0 +1,547 @@
+package com.brimworks.nio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.nio.channels.SelectableChannel;
+
+/**
+ * Buffered, non-blocking byte stream over a channel (typically a
+ * {@link java.nio.channels.SocketChannel}), so users of {@link IOWatcher} don't
+ * need to manage buffers and interest ops by hand:
+ *
+ * <ul>
+ * <li>Bytes are read into the {@link #inbound()} buffer, then the
+ *     {@link #onRead(Callback)} callback consumes them.</li>
+ * <li>{@link #write(ByteBuffer)} appends to the outbound {@link WriteQueue}
+ *     (without copying) and eagerly writes to the channel. Pending buffers are
+ *     flushed with one gathering write per readiness event. WRITE interest is
+ *     only enabled while outbound bytes are pending, so the loop never spins
+ *     on an always-writable channel. With {@link #writeCoalescing(boolean)}
+ *     the eager write is instead deferred to just before the loop polls, so
+ *     all writes of a loop iteration cost one gathering write.</li>
+ * <li>Inbound backpressure: reading is paused once unconsumed inbound bytes
+ *     reach the read high watermark, and resumed once they are consumed down
+ *     to the read low watermark. While paused the peer is throttled by TCP
+ *     flow control.</li>
+ * <li>Outbound backpressure: once pending outbound bytes reach the write high
+ *     watermark the connection is no longer {@link #isWritable()}, until they
+ *     drain to the write low watermark, at which point
+ *     {@link #onWritable(Callback)} is called. Producers (for example a proxy
+ *     relaying another connection's inbound bytes) should stop writing while
+ *     the connection is not writable, which bounds the outbound buffer.</li>
+ * </ul>
+ *
+ * The watermarks use hysteresis so interest ops don't flap as each byte is
+ * consumed or written.
+ *
+ * If reading from or writing to the channel fails (for example the peer
+ * reset the connection), the connection is closed and
+ * {@link #onError(Callback)} is called, rather than the error escaping the
+ * event loop.
+ */
+public class Connection implements Closeable {
+    private final IOWatcher watcher;
+    private final SelectableChannel channel;
+    private final ScatteringByteChannel input;
+    private final GatheringByteChannel output;
+    private RingByteBuffer inbound;
+    private final WriteQueue outbound = new WriteQueue();
+    private int readLowWatermark;
+    private int readHighWatermark;
+    private long writeLowWatermark;
+    private long writeHighWatermark;
+    private int readBudget;
+    private boolean isReadPaused = false;
+    private boolean isReadEnabled = true;
+    private boolean isWritable = true;
+    private boolean isEof = false;
+    private boolean isWriteCoalescing = false;
+    // Non-null once write coalescing was enabled:
+    private PrepareWatcher flusher;
+    private Callback<Connection> onRead = c -> {};
+    private Callback<Connection> onEof = Connection::close;
+    private Callback<Connection> onWritable = c -> {};
+    private Callback<Connection> onDrained = c -> {};
+    private Callback<Connection> onError = c -> {};
+    // Non-null once reading or writing failed:
+    private IOException error;
+
+    protected <C extends SelectableChannel & ScatteringByteChannel & GatheringByteChannel> Connection(
+        EventLoop loop, int priority, C channel, int inboundCapacity, int writeHighWatermark) throws IOException
+    {
+        if (inboundCapacity <= 0 || writeHighWatermark <= 0) {
+            throw new IllegalArgumentException("inbound capacity and write high watermark must be positive, got " +
+                inboundCapacity + " and " + writeHighWatermark);
+        }
+        this.channel = channel;
+        this.input = channel;
+        this.output = channel;
+        this.inbound = RingByteBuffer.allocate(inboundCapacity);
+        this.readHighWatermark = inboundCapacity;
+        this.readLowWatermark = inboundCapacity / 2;
+        this.writeHighWatermark = writeHighWatermark;
+        this.writeLowWatermark = writeHighWatermark / 2;
+        this.readBudget = inboundCapacity;
+        channel.configureBlocking(false);
+        this.watcher = loop.ioWatcher(priority, channel)
+            .callback(w -> handle())
+            .interestOps(IOWatcher.Operation.READ);
+    }
+
+    /**
+     * @param onRead is called after bytes are read into {@link #inbound()}.
+     * @return this for method chaining.
+     */
+    public Connection onRead(Callback<Connection> onRead) {
+        if (null == onRead) {
+            throw new IllegalArgumentException("onRead must be non-null");
+        }
+        this.onRead = onRead;
+        return this;
+    }
+
+    /**
+     * @param onEof is called once the peer shuts down its output, the default
+     *     closes this connection.
+     * @return this for method chaining.
+     */
+    public Connection onEof(Callback<Connection> onEof) {
+        if (null == onEof) {
+            throw new IllegalArgumentException("onEof must be non-null");
+        }
+        this.onEof = onEof;
+        return this;
+    }
+
+    /**
+     * @param onWritable is called when the pending outbound bytes drain to the
+     *     low watermark after reaching the high watermark.
+     * @return this for method chaining.
+     */
+    public Connection onWritable(Callback<Connection> onWritable) {
+        if (null == onWritable) {
+            throw new IllegalArgumentException("onWritable must be non-null");
+        }
+        this.onWritable = onWritable;
+        return this;
+    }
+
+    /**
+     * @param onDrained is called when pending outbound bytes which could not
+     *     be written immediately are all written.
+     * @return this for method chaining.
+     */
+    public Connection onDrained(Callback<Connection> onDrained) {
+        if (null == onDrained) {
+            throw new IllegalArgumentException("onDrained must be non-null");
+        }
+        this.onDrained = onDrained;
+        return this;
+    }
+
+    /**
+     * @param onError is called after reading from or writing to the channel
+     *     failed and the connection was closed, see {@link #error()}.
+     * @return this for method chaining.
+     */
+    public Connection onError(Callback<Connection> onError) {
+        if (null == onError) {
+            throw new IllegalArgumentException("onError must be non-null");
+        }
+        this.onError = onError;
+        return this;
+    }
+
+    /**
+     * @return the error which closed the connection, or null.
+     */
+    public IOException error() {
+        return error;
+    }
+
+    /**
+     * @param lowWatermark is the unconsumed inbound bytes at which reading resumes.
+     * @param highWatermark is the unconsumed inbound bytes at which reading is
+     *     paused, at most the inbound capacity (the default).
+     * @return this for method chaining.
+     */
+    public Connection readWatermarks(int lowWatermark, int highWatermark) {
+        checkWatermarks(lowWatermark, highWatermark);
+        if (highWatermark > inbound.totalCapacity()) {
+            throw new IllegalArgumentException("read high watermark must be at most the inbound capacity " +
+                inbound.totalCapacity() + ", got " + highWatermark);
+        }
+        this.readLowWatermark = lowWatermark;
+        this.readHighWatermark = highWatermark;
+        return this;
+    }
+
+    public int readLowWatermark() {
+        return readLowWatermark;
+    }
+
+    public int readHighWatermark() {
+        return readHighWatermark;
+    }
+
+    /**
+     * @param lowWatermark is the pending outbound bytes at which the connection
+     *     becomes writable again.
+     * @param highWatermark is the pending outbound bytes at which the connection
+     *     stops being writable.
+     * @return this for method chaining.
+     */
+    public Connection writeWatermarks(long lowWatermark, long highWatermark) {
+        checkWatermarks(lowWatermark, highWatermark);
+        this.writeLowWatermark = lowWatermark;
+        this.writeHighWatermark = highWatermark;
+        return this;
+    }
+
+    public long writeLowWatermark() {
+        return writeLowWatermark;
+    }
+
+    public long writeHighWatermark() {
+        return writeHighWatermark;
+    }
+
+    /**
+     * Fairness between connections of an event loop: each readiness event
+     * reads (and calls {@link #onRead(Callback)}) until the socket is drained
+     * or this many bytes were read, in which case the watcher is requeued
+     * with {@link EventLoop#requeue(Watcher)} so other connections run first.
+     *
+     * @param readBudget is the bytes read per run, defaults to the inbound
+     *     capacity.
+     * @return this for method chaining.
+     */
+    public Connection readBudget(int readBudget) {
+        if (readBudget <= 0) {
+            throw new IllegalArgumentException("readBudget must be positive, got " + readBudget);
+        }
+        this.readBudget = readBudget;
+        return this;
+    }
+
+    public int readBudget() {
+        return readBudget;
+    }
+
+    /**
+     * Coalesce the writes of a loop iteration: instead of writing to the
+     * channel on each {@link #write(ByteBuffer)}, bytes are queued and flushed
+     * by a {@link PrepareWatcher} just before the loop next polls for I/O.
+     * This trades a little latency for one gathering write per iteration when
+     * a handler writes several small buffers (for example pipelined
+     * responses).
+     *
+     * @param writeCoalescing is true to defer writes, defaults to false.
+     * @return this for method chaining.
+     */
+    public Connection writeCoalescing(boolean writeCoalescing) {
+        if (writeCoalescing && null == flusher) {
+            flusher = watcher.eventLoop().prepareWatcher(watcher.priority())
+                .callback(w -> flushCoalesced());
+        }
+        this.isWriteCoalescing = writeCoalescing;
+        return this;
+    }
+
+    public boolean isWriteCoalescing() {
+        return isWriteCoalescing;
+    }
+
+    public IOWatcher watcher() {
+        return watcher;
+    }
+
+    public SelectableChannel channel() {
+        return channel;
+    }
+
+    /**
+     * @return the bytes read but not yet consumed. Consume bytes by removing
+     *     them from this buffer (for example with getAll()).
+     */
+    public RingByteBuffer inbound() {
+        return inbound;
+    }
+
+    /**
+     * @return the number of bytes written but not yet flushed to the channel.
+     */
+    public long pendingOutbound() {
+        return outbound.size();
+    }
+
+    /**
+     * @return false if the pending outbound bytes reached the high watermark
+     *     and have not yet drained to the low watermark.
+     */
+    public boolean isWritable() {
+        return isWritable;
+    }
+
+    /**
+     * @param readEnabled is false to stop reading regardless of the read
+     *     watermarks, for example while a consumer has no demand.
+     * @return this for method chaining.
+     */
+    public Connection readEnabled(boolean readEnabled) {
+        if (this.isReadEnabled != readEnabled) {
+            this.isReadEnabled = readEnabled;
+            updateInterestOps();
+        }
+        return this;
+    }
+
+    public boolean isReadEnabled() {
+        return isReadEnabled;
+    }
+
+    /**
+     * @return true if reading is paused because of unconsumed inbound bytes.
+     */
+    public boolean isReadPaused() {
+        return isReadPaused;
+    }
+
+    /**
+     * @return true if the peer shut down its output.
+     */
+    public boolean isEof() {
+        return isEof;
+    }
+
+    /**
+     * Start reading (and writing), must be called on the event loop thread.
+     *
+     * @return this for method chaining.
+     */
+    public Connection start() {
+        watcher.start();
+        updateInterestOps();
+        return this;
+    }
+
+    /**
+     * Stop reading and writing, but keep the channel open.
+     *
+     * @return this for method chaining.
+     */
+    public Connection stop() {
+        watcher.stop();
+        return this;
+    }
+
+    /**
+     * Stop the watcher and close the channel, discarding pending outbound bytes.
+     */
+    @Override
+    public void close() throws IOException {
+        watcher.stop();
+        if (null != flusher) {
+            flusher.stop();
+        }
+        outbound.clear();
+        channel.close();
+    }
+
+    /**
+     * Queue bytes to be written, writing as much as possible to the channel
+     * immediately. The buffer is queued without copying, so it must not be
+     * modified until written (when it has no bytes remaining).
+     *
+     * @param src has the bytes to write between position and limit, which
+     *     are all consumed.
+     * @return this for method chaining.
+     */
+    public Connection write(ByteBuffer src) throws IOException {
+        outbound.add(src);
+        return flush();
+    }
+
+    /**
+     * Queue a region of a file to be written after the bytes already queued,
+     * writing as much as possible immediately. The bytes are sent with
+     * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+     * (sendfile on Linux) as the channel becomes writable, so they are never
+     * copied into the JVM.
+     *
+     * @param file is the file to send, it must not be truncated (or closed)
+     *     until written.
+     * @param position is the offset in the file of the first byte to send.
+     * @param count is the number of bytes to send.
+     * @return this for method chaining.
+     */
+    public Connection write(FileChannel file, long position, long count) throws IOException {
+        outbound.add(file, position, count);
+        return flush();
+    }
+
+    private Connection flush() throws IOException {
+        if (0 == (watcher.interestOps() & IOWatcher.Operation.WRITE.getCode())) {
+            // Not waiting for the channel to be writable, so try now (or just
+            // before polling if coalescing):
+            if (isWriteCoalescing) {
+                flusher.start();
+                if (isWritable && outbound.size() >= writeHighWatermark) {
+                    isWritable = false;
+                }
+                return this;
+            }
+            if (!flushChannel()) {
+                return this;
+            }
+        }
+        if (isWritable && outbound.size() >= writeHighWatermark) {
+            isWritable = false;
+        }
+        updateInterestOps();
+        return this;
+    }
+
+    /**
+     * Re-evaluate the interest ops, call this after consuming inbound bytes
+     * outside of the {@link #onRead(Callback)} callback so reading resumes.
+     *
+     * @return this for method chaining.
+     */
+    public Connection updateInterestOps() {
+        if (!watcher.isActive()) {
+            return this;
+        }
+        int size = inbound.size();
+        if (isReadPaused ? size <= readLowWatermark : size >= readHighWatermark) {
+            isReadPaused = !isReadPaused;
+        }
+        int ops = 0;
+        if (isReadEnabled && !isEof && !isReadPaused) {
+            ops |= IOWatcher.Operation.READ.getCode();
+        }
+        if (!outbound.isEmpty()) {
+            ops |= IOWatcher.Operation.WRITE.getCode();
+        }
+        if (ops != watcher.interestOps()) {
+            watcher.interestOps(ops);
+        }
+        return this;
+    }
+
+    private static void checkWatermarks(long lowWatermark, long highWatermark) {
+        if (lowWatermark < 0 || highWatermark <= lowWatermark) {
+            throw new IllegalArgumentException("watermarks must satisfy 0 <= low < high, got " +
+                lowWatermark + " and " + highWatermark);
+        }
+    }
+
+    private void flushCoalesced() throws IOException {
+        flusher.stop();
+        if (watcher.isActive() && !outbound.isEmpty()) {
+            flushOutbound();
+            updateInterestOps();
+        }
+    }
+
+    /**
+     * @return false if writing failed, in which case the connection is closed.
+     */
+    private boolean flushChannel() throws IOException {
+        try {
+            outbound.flush(output);
+            return true;
+        } catch (IOException ex) {
+            fail(ex);
+            return false;
+        }
+    }
+
+    /**
+     * Close the connection because reading or writing failed, and report the
+     * error.
+     */
+    private void fail(IOException ex) throws IOException {
+        if (!channel.isOpen()) {
+            // Already closed by the user, for example a write after close():
+            throw ex;
+        }
+        error = ex;
+        try {
+            close();
+        } catch (IOException closeEx) {
+            ex.addSuppressed(closeEx);
+        }
+        onError.accept(this);
+    }
+
+    /**
+     * Report an error writing on behalf of a writer such as
+     * {@link ConnectionSubscriber}, which can't throw it. If an error was
+     * already reported, for example the write failed and then the
+     * {@link #onError(Callback)} callback threw, it is suppressed by that one.
+     */
+    void report(IOException ex) throws IOException {
+        if (null != error) {
+            if (error != ex) {
+                error.addSuppressed(ex);
+            }
+            return;
+        }
+        if (!channel.isOpen()) {
+            // Closed by the user, nothing to report:
+            return;
+        }
+        fail(ex);
+    }
+
+    private void flushOutbound() throws IOException {
+        if (!flushChannel()) {
+            return;
+        }
+        if (!isWritable && outbound.size() <= writeLowWatermark) {
+            isWritable = true;
+            onWritable.accept(this);
+        }
+        if (outbound.isEmpty()) {
+            onDrained.accept(this);
+        }
+    }
+
+    private void handle() throws IOException {
+        if (watcher.isWritable() && !outbound.isEmpty()) {
+            flushOutbound();
+        }
+        if (watcher.isActive() && watcher.isReadable()) {
+            long budget = readBudget;
+            while (watcher.isActive() && isReadEnabled && !isEof && !isReadPaused) {
+                if (budget <= 0) {
+                    watcher.eventLoop().requeue(watcher);
+                    break;
+                }
+                long count;
+                try {
+                    count = inbound.readFrom(input);
+                } catch (IOException ex) {
+                    fail(ex);
+                    return;
+                }
+                if (count < 0) {
+                    isEof = true;
+                    onEof.accept(this);
+                } else if (count > 0) {
+                    budget -= count;
+                    onRead.accept(this);
+                } else {
+                    break;
+                }
+                updateInterestOps();
+            }
+        }
+        updateInterestOps();
+    }
+}
@@ -0,0 +1,145 @@
+package com.brimworks.nio;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Flow;
+
+/**
+ * Adapts the read side of a {@link Connection} to a {@link Flow.Publisher}
+ * of the bytes read, with demand driven backpressure: the connection only has
+ * READ interest while the subscriber has outstanding demand, so a slow
+ * subscriber throttles the peer via TCP flow control.
+ *
+ * Each item is a new buffer (ready to read) of the bytes read since the last
+ * item, at most the inbound capacity. The subscriber is signalled on the
+ * event loop thread, {@link Flow.Subscriber#onComplete()} once the peer shuts
+ * down its output, or {@link Flow.Subscriber#onError(Throwable)} with the
+ * {@link Connection#error()} if reading failed. There is at most one
+ * subscriber.
+ *
+ * This takes over the connection's {@link Connection#onRead(Callback)},
+ * {@link Connection#onEof(Callback)} and {@link Connection#onError(Callback)}
+ * callbacks, and
+ * {@link Connection#readEnabled(boolean)}.
+ */
+public class ConnectionPublisher implements Flow.Publisher<ByteBuffer> {
+    private class Subscription implements Flow.Subscription {
+        @Override
+        public void request(long n) {
+            loop.execute(() -> {
+                if (isDone) {
+                    return;
+                }
+                if (n <= 0) {
+                    finish();
+                    subscriber.onError(new IllegalArgumentException("request must be positive, got " + n));
+                    return;
+                }
+                demand += n;
+                if (demand < 0) {
+                    // Overflow, which means unbounded:
+                    demand = Long.MAX_VALUE;
+                }
+                emit();
+            });
+        }
+
+        @Override
+        public void cancel() {
+            loop.execute(ConnectionPublisher.this::finish);
+        }
+    }
+
+    private final Connection connection;
+    private final EventLoop loop;
+    // Only accessed on the event loop thread:
+    private Flow.Subscriber<? super ByteBuffer> subscriber;
+    private long demand = 0;
+    private boolean isDone = false;
+
+    /**
+     * @param connection is the connection to read from, reading is disabled
+     *     until there is demand.
+     */
+    public ConnectionPublisher(Connection connection) {
+        this.connection = connection;
+        this.loop = connection.watcher().eventLoop();
+        connection.readEnabled(false)
+            .onRead(c -> emit())
+            .onEof(c -> emit())
+            .onError(c -> emit());
+    }
+
+    public Connection connection() {
+        return connection;
+    }
+
+    /**
+     * Thread-safe.
+     *
+     * @param subscriber receives the bytes read, on the event loop thread.
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        if (null == subscriber) {
+            throw new NullPointerException("subscriber must be non-null");
+        }
+        loop.execute(() -> {
+            if (null != this.subscriber) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {}
+
+                    @Override
+                    public void cancel() {}
+                });
+                subscriber.onError(new IllegalStateException("ConnectionPublisher only supports one subscriber"));
+                return;
+            }
+            this.subscriber = subscriber;
+            subscriber.onSubscribe(new Subscription());
+            // The peer may already be done:
+            emit();
+        });
+    }
+
+    /**
+     * Signal the inbound bytes while there is demand, then only keep reading
+     * if demand remains.
+     */
+    private void emit() {
+        if (isDone || null == subscriber) {
+            return;
+        }
+        if (null != connection.error()) {
+            finish();
+            subscriber.onError(connection.error());
+            return;
+        }
+        RingByteBuffer inbound = connection.inbound();
+        while (demand > 0 && !inbound.isEmpty()) {
+            ByteBuffer item = ByteBuffer.allocate(inbound.size());
+            inbound.getAll(item);
+            item.flip();
+            if (demand != Long.MAX_VALUE) {
+                demand--;
+            }
+            subscriber.onNext(item);
+            if (isDone) {
+                return;
+            }
+        }
+        if (connection.isEof() && inbound.isEmpty()) {
+            finish();
+            subscriber.onComplete();
+            return;
+        }
+        connection.readEnabled(demand > 0)
+            .updateInterestOps();
+    }
+
+    private void finish() {
+        isDone = true;
+        demand = 0;
+        connection.readEnabled(false);
+    }
+}
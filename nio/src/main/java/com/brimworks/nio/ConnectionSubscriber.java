@@ -0,0 +1,140 @@
+package com.brimworks.nio;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Flow;
+
+/**
+ * Adapts the write side of a {@link Connection} to a {@link Flow.Subscriber}
+ * of the bytes to write, with demand driven backpressure: one item is
+ * requested at a time, and the next only while the connection
+ * {@link Connection#isWritable()}, so a slow peer throttles the publisher once
+ * the pending outbound bytes reach the write high watermark.
+ *
+ * Items are written without copying, so the publisher must not modify them
+ * afterwards. Signals may come from any thread, they are handed to the event
+ * loop thread with {@link EventLoop#execute(Runnable)}. Once the publisher
+ * completes and all bytes are written, {@link #onComplete(Callback)} is called
+ * (which closes the connection by default). On error the connection is closed,
+ * discarding pending bytes. If writing fails the subscription is cancelled,
+ * and the error is reported to {@link Connection#onError(Callback)}.
+ *
+ * This takes over the connection's {@link Connection#onWritable(Callback)}
+ * and {@link Connection#onDrained(Callback)} callbacks.
+ */
+public class ConnectionSubscriber implements Flow.Subscriber<ByteBuffer> {
+    private final Connection connection;
+    private final EventLoop loop;
+    private Callback<Connection> onComplete = Connection::close;
+    // Only accessed on the event loop thread:
+    private Flow.Subscription subscription;
+    private boolean isComplete = false;
+
+    /**
+     * @param connection is the connection to write to.
+     */
+    public ConnectionSubscriber(Connection connection) {
+        this.connection = connection;
+        this.loop = connection.watcher().eventLoop();
+        connection.onWritable(c -> subscription.request(1))
+            .onDrained(c -> {
+                if (isComplete) {
+                    onComplete.accept(c);
+                }
+            });
+    }
+
+    public Connection connection() {
+        return connection;
+    }
+
+    /**
+     * @param onComplete is called on the event loop thread once the publisher
+     *     completed and all bytes are written.
+     * @return this for method chaining.
+     */
+    public ConnectionSubscriber onComplete(Callback<Connection> onComplete) {
+        if (null == onComplete) {
+            throw new IllegalArgumentException("onComplete must be non-null");
+        }
+        this.onComplete = onComplete;
+        return this;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (null == subscription) {
+            throw new NullPointerException("subscription must be non-null");
+        }
+        loop.execute(() -> {
+            if (null != this.subscription) {
+                subscription.cancel();
+                return;
+            }
+            this.subscription = subscription;
+            subscription.request(1);
+        });
+    }
+
+    @Override
+    public void onNext(ByteBuffer item) {
+        if (null == item) {
+            throw new NullPointerException("item must be non-null");
+        }
+        loop.execute(() -> {
+            if (!connection.channel().isOpen()) {
+                subscription.cancel();
+                return;
+            }
+            try {
+                connection.write(item);
+            } catch (IOException ex) {
+                // Report to Connection.onError() rather than unwinding the event loop:
+                subscription.cancel();
+                try {
+                    connection.report(ex);
+                } catch (IOException reportEx) {
+                    throw new UncheckedIOException(reportEx);
+                }
+                return;
+            }
+            if (!connection.channel().isOpen()) {
+                // Writing failed, see Connection.onError():
+                subscription.cancel();
+            } else if (connection.isWritable()) {
+                subscription.request(1);
+            }
+        });
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        if (null == error) {
+            throw new NullPointerException("error must be non-null");
+        }
+        loop.execute(this::close);
+    }
+
+    @Override
+    public void onComplete() {
+        loop.execute(() -> {
+            isComplete = true;
+            if (0 == connection.pendingOutbound()) {
+                try {
+                    onComplete.accept(connection);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        });
+    }
+
+    private void close() {
+        try {
+            connection.close();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.brimworks.nio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+
+/**
+ * Batched, non-blocking datagram I/O over a {@link DatagramChannel}:
+ *
+ * <ul>
+ * <li>Each READ readiness event receives up to {@link #batchSize()}
+ *     datagrams into a pool of preallocated buffers, then calls
+ *     {@link #onReceive(Callback)} once for the whole batch, so a busy socket
+ *     costs one readiness round trip (and no allocation) per batch rather
+ *     than per datagram.</li>
+ * <li>{@link #send(ByteBuffer, SocketAddress)} sends immediately if the
+ *     watcher is active and nothing is queued, otherwise (or if the socket
+ *     buffer is full) queues the datagram. Queued datagrams are flushed in
+ *     order on WRITE readiness, up to {@link #batchSize()} per event. WRITE
+ *     interest is only enabled while datagrams are queued.</li>
+ * <li>Errors receiving or sending, such as a
+ *     {@link java.net.PortUnreachableException} on a connected channel, are
+ *     reported to {@link #onError(Callback)} rather than escaping the event
+ *     loop. The channel is left open, and a datagram which failed to send is
+ *     dropped.</li>
+ * </ul>
+ *
+ * Java has no recvmmsg/sendmmsg, so each datagram is still one syscall, the
+ * batching saves the select and dispatch per datagram.
+ */
+public class DatagramWatcher implements Closeable {
+    private final IOWatcher watcher;
+    private final DatagramChannel channel;
+    private final ByteBuffer[] buffers;
+    private final SocketAddress[] sources;
+    private int received = 0;
+    // Circular queue of datagrams to send, and their targets (null if connected):
+    private ByteBuffer[] outbound = new ByteBuffer[16];
+    private SocketAddress[] targets = new SocketAddress[16];
+    private int outboundHead = 0;
+    private int outboundCount = 0;
+    private Callback<DatagramWatcher> onReceive = w -> {};
+    private Callback<IOException> onError = ex -> {};
+
+    protected DatagramWatcher(EventLoop loop, int priority, DatagramChannel channel, int batchSize,
+        int maxDatagramSize) throws IOException
+    {
+        if (batchSize <= 0 || maxDatagramSize <= 0) {
+            throw new IllegalArgumentException("batch size and max datagram size must be positive, got " +
+                batchSize + " and " + maxDatagramSize);
+        }
+        this.channel = channel;
+        this.buffers = new ByteBuffer[batchSize];
+        this.sources = new SocketAddress[batchSize];
+        // One allocation for the whole pool:
+        ByteBuffer pool = ByteBuffer.allocateDirect(batchSize * maxDatagramSize);
+        for (int i = 0; i < batchSize; i++) {
+            pool.limit((i + 1) * maxDatagramSize);
+            pool.position(i * maxDatagramSize);
+            buffers[i] = pool.slice();
+        }
+        channel.configureBlocking(false);
+        this.watcher = loop.ioWatcher(priority, channel)
+            .callback(w -> handle())
+            .interestOps(IOWatcher.Operation.READ);
+    }
+
+    /**
+     * @param onReceive is called after a batch of datagrams was received, see
+     *     {@link #received()}.
+     * @return this for method chaining.
+     */
+    public DatagramWatcher onReceive(Callback<DatagramWatcher> onReceive) {
+        if (null == onReceive) {
+            throw new IllegalArgumentException("onReceive must be non-null");
+        }
+        this.onReceive = onReceive;
+        return this;
+    }
+
+    /**
+     * @param onError is called with each error receiving or sending a
+     *     datagram, by default errors are ignored.
+     * @return this for method chaining.
+     */
+    public DatagramWatcher onError(Callback<IOException> onError) {
+        if (null == onError) {
+            throw new IllegalArgumentException("onError must be non-null");
+        }
+        this.onError = onError;
+        return this;
+    }
+
+    public IOWatcher watcher() {
+        return watcher;
+    }
+
+    public DatagramChannel channel() {
+        return channel;
+    }
+
+    /**
+     * @return the maximum datagrams received or sent per readiness event.
+     */
+    public int batchSize() {
+        return buffers.length;
+    }
+
+    /**
+     * @return the number of datagrams of the batch, only valid in the
+     *     {@link #onReceive(Callback)} callback.
+     */
+    public int received() {
+        return received;
+    }
+
+    /**
+     * @param index is less than {@link #received()}.
+     * @return the datagram, ready to read. The buffer is reused by the next
+     *     batch, so must not be used after the callback returns. Datagrams
+     *     larger than the max datagram size are truncated.
+     */
+    public ByteBuffer datagram(int index) {
+        checkIndex(index);
+        return buffers[index];
+    }
+
+    /**
+     * @param index is less than {@link #received()}.
+     * @return the address the datagram was received from.
+     */
+    public SocketAddress source(int index) {
+        checkIndex(index);
+        return sources[index];
+    }
+
+    /**
+     * @return the number of datagrams queued to be sent.
+     */
+    public int pendingDatagrams() {
+        return outboundCount;
+    }
+
+    /**
+     * Start receiving (and sending), must be called on the event loop thread.
+     *
+     * @return this for method chaining.
+     */
+    public DatagramWatcher start() {
+        watcher.start();
+        updateInterestOps();
+        return this;
+    }
+
+    /**
+     * Stop receiving and sending, but keep the channel open.
+     *
+     * @return this for method chaining.
+     */
+    public DatagramWatcher stop() {
+        watcher.stop();
+        return this;
+    }
+
+    /**
+     * Stop the watcher and close the channel, discarding queued datagrams.
+     */
+    @Override
+    public void close() throws IOException {
+        watcher.stop();
+        Arrays.fill(outbound, null);
+        Arrays.fill(targets, null);
+        outboundCount = 0;
+        channel.close();
+    }
+
+    /**
+     * Send a datagram, or queue it (without copying) if the watcher is not
+     * active, datagrams are already queued or the socket buffer is full.
+     *
+     * @param datagram has the bytes to send between position and limit. If
+     *     queued it must not be modified until sent.
+     * @param target is the address to send to, or null if the channel is
+     *     connected.
+     * @return true if sent immediately (or dropped because sending failed,
+     *     see {@link #onError(Callback)}), false if queued.
+     * @throws IOException if the channel is closed.
+     */
+    public boolean send(ByteBuffer datagram, SocketAddress target) throws IOException {
+        if (watcher.isActive() && 0 == outboundCount) {
+            try {
+                if (sendNow(datagram, target)) {
+                    return true;
+                }
+            } catch (IOException ex) {
+                fail(ex);
+                return true;
+            }
+        }
+        if (outboundCount == outbound.length) {
+            ByteBuffer[] newOutbound = new ByteBuffer[outboundCount * 2];
+            SocketAddress[] newTargets = new SocketAddress[outboundCount * 2];
+            for (int i = 0; i < outboundCount; i++) {
+                int index = (outboundHead + i) % outbound.length;
+                newOutbound[i] = outbound[index];
+                newTargets[i] = targets[index];
+            }
+            outbound = newOutbound;
+            targets = newTargets;
+            outboundHead = 0;
+        }
+        int tail = (outboundHead + outboundCount) % outbound.length;
+        outbound[tail] = datagram;
+        targets[tail] = target;
+        outboundCount++;
+        updateInterestOps();
+        return false;
+    }
+
+    /**
+     * @return true if sent, false if the socket buffer is full.
+     */
+    private boolean sendNow(ByteBuffer datagram, SocketAddress target) throws IOException {
+        if (null == target) {
+            channel.write(datagram);
+        } else {
+            channel.send(datagram, target);
+        }
+        // A datagram is sent whole or not at all, and an empty datagram is
+        // sent with a count of 0, so the count can't tell:
+        return !datagram.hasRemaining();
+    }
+
+    private void updateInterestOps() {
+        if (!watcher.isActive()) {
+            return;
+        }
+        int ops = IOWatcher.Operation.READ.getCode();
+        if (outboundCount > 0) {
+            ops |= IOWatcher.Operation.WRITE.getCode();
+        }
+        if (ops != watcher.interestOps()) {
+            watcher.interestOps(ops);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= received) {
+            throw new IndexOutOfBoundsException("index " + index + " out of bounds for " + received + " datagrams");
+        }
+    }
+
+    /**
+     * Report an error receiving or sending, unless the channel was closed.
+     */
+    private void fail(IOException ex) throws IOException {
+        if (!channel.isOpen()) {
+            // Closed by the user, for example a send after close():
+            throw ex;
+        }
+        onError.accept(ex);
+    }
+
+    private void dequeue() {
+        outbound[outboundHead] = null;
+        targets[outboundHead] = null;
+        outboundHead = (outboundHead + 1) % outbound.length;
+        outboundCount--;
+    }
+
+    private void handle() throws IOException {
+        if (watcher.isWritable()) {
+            for (int i = 0; i < buffers.length && outboundCount > 0; i++) {
+                boolean isSent;
+                try {
+                    isSent = sendNow(outbound[outboundHead], targets[outboundHead]);
+                } catch (IOException ex) {
+                    // Drop the datagram, so a persistent error can't stall the queue:
+                    dequeue();
+                    fail(ex);
+                    continue;
+                }
+                if (!isSent) {
+                    break;
+                }
+                dequeue();
+            }
+        }
+        if (watcher.isActive() && watcher.isReadable()) {
+            IOException error = null;
+            received = 0;
+            try {
+                while (received < buffers.length) {
+                    ByteBuffer buffer = buffers[received];
+                    buffer.clear();
+                    SocketAddress source = channel.receive(buffer);
+                    if (null == source) {
+                        break;
+                    }
+                    buffer.flip();
+                    sources[received++] = source;
+                }
+            } catch (IOException ex) {
+                error = ex;
+            }
+            if (received > 0) {
+                try {
+                    onReceive.accept(this);
+                } finally {
+                    received = 0;
+                }
+            }
+            if (null != error) {
+                fail(error);
+            }
+        }
+        updateInterestOps();
+    }
+}
@@ -2,14 +2,26 @@ package com.brimworks.nio;
 
 import java.io.Closeable;
 import java.util.Iterator;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ScatteringByteChannel;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
-import java.util.PriorityQueue;
+import java.nio.channels.SocketChannel;
 import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.Callable;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
-import java.util.Set;
-import java.util.HashSet;
+import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 public class EventLoop implements Iterable<Watcher>, Closeable {
     private enum Break {
@@ -18,17 +30,45 @@ public class EventLoop implements Iterable<Watcher>, Closeable {
         ALL;
     }
 
+    private static final long MILLIS_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // Sub-millisecond waits park in slices of at most this long until this long
+    // before the deadline, then spin:
+    private static final long FINISH_SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
     // Selector:
     private Selector selector;
 
-    // Active SelectionKeys:
-    private Set<SelectionKey> activeSelectionKeys = new HashSet<>();
+    // Number of active IOWatchers:
+    private int activeIOWatchers = 0;
+
+    // Number of active Timers with sub-millisecond intervals:
+    private int activePreciseTimers = 0;
+
+    // Number of active OffloadWatchers:
+    private int activeOffloads = 0;
+
+    // Number of active MessageWatchers:
+    private int activeMessageWatchers = 0;
+
+    // Maximum time to busy-poll before a blocking select, 0 to never spin:
+    private long spinNanos = 0;
+
+    // Current spin budget, backs off towards spinNanos / 16 while spinning is fruitless:
+    private long adaptiveSpinNanos = 0;
+
+    // Null to use OffloadWatcher.defaultExecutor():
+    private Executor offloadExecutor;
+
+    // Called by the selector for each ready SelectionKey, allocated once so that
+    // dispatching ready keys does not allocate (see select()):
+    private final Consumer<SelectionKey> onSelected = this::selected;
 
     // Used for breaking out of the event loop:
     private Break break_ = Break.NONE;
 
     // Used for timers:
-    private PriorityQueue<Timer> timerQueue = new PriorityQueue<>(Timer.COMPARE_END_NANOS);
+    private TimerStore timerStore;
 
     // Start of event loop:
     private long now = System.nanoTime();
@@ -39,15 +79,73 @@ public class EventLoop implements Iterable<Watcher>, Closeable {
     // Count loop depth:
     private int loopDepth = 0;
 
+    // Maximum runs of a watcher per loop iteration, see requeue():
+    private int runBudget = 4;
+
     // Used for pending watchers that need to be ran:
-    private PriorityQueue<Watcher> pending = new PriorityQueue<>();
+    private PendingQueue pending = new PendingQueue();
+
+    // Active prepare, check and idle watchers:
+    private WatcherList prepareWatchers = new WatcherList();
+    private WatcherList checkWatchers = new WatcherList();
+    private WatcherList idleWatchers = new WatcherList();
+
+    // IOWatchers with interest ops changes to apply before the next select:
+    private IOWatcher[] dirtyWatchers = new IOWatcher[16];
+    private int dirtyCount = 0;
+
+    // True if the prepare watchers of this loop iteration were queued:
+    private boolean isPrepared = false;
+
+    // Keeps the loop running even if there are no active watchers:
+    private int refCount = 0;
+
+    // Tasks submitted by execute():
+    private MpscQueue<Runnable> tasks = new MpscQueue<>();
+
+    // True while the loop thread is (about to be) blocked in select:
+    private AtomicBoolean parked = new AtomicBoolean(false);
+
+    // Thread running the outermost run():
+    private volatile Thread thread;
+
+    // Null unless enableMetrics() was called:
+    private volatile EventLoopMetrics metrics;
+
+    // Number of channels registered with the selector, readable from any thread:
+    private volatile int registeredChannels = 0;
+
+    // True while a Watchdog is watching this loop:
+    private volatile boolean isWatched = false;
+
+    // Odd while a watcher is running, only updated while isWatched:
+    private final AtomicLong runSequence = new AtomicLong();
+
+    // Watcher which is running and when it started, published by the
+    // runSequence update:
+    private Watcher runningWatcher;
+    private long runStartNanos;
 
     public EventLoop() throws IOException {
         this(Selector.open());
     }
 
+    public EventLoop(TimerStore timerStore) throws IOException {
+        this(Selector.open(), timerStore);
+    }
+
     public EventLoop(Selector selector) throws IOException {
+        this(selector, new TimerHeap());
+    }
+
+    /**
+     * @param selector is used for polling IOWatchers.
+     * @param timerStore is used for storing active Timers, for example
+     *     a {@link TimerWheel} if there are many timers.
+     */
+    public EventLoop(Selector selector, TimerStore timerStore) throws IOException {
         this.selector = selector;
+        this.timerStore = timerStore;
     }
 
     @Override
@@ -61,58 +159,398 @@ public class EventLoop implements Iterable<Watcher>, Closeable {
     }
 
     protected void add(Timer timer) {
-        timerQueue.add(timer);
+        timerStore.add(timer);
     }
 
     protected void add(IOWatcher watcher) {
-        activeSelectionKeys.add(watcher.selectionKey());
+        activeIOWatchers++;
+    }
+
+    /**
+     * Called by a Timer with a sub-millisecond interval when it is started or
+     * stopped.
+     */
+    void preciseTimer(boolean isActive) {
+        activePreciseTimers += isActive ? 1 : -1;
+    }
+
+    protected void add(PrepareWatcher watcher) {
+        prepareWatchers.add(watcher);
+        if (isPrepared) {
+            // Started after this iteration's prepare watchers were queued (by
+            // a prepare watcher or a task), it must still run before polling:
+            pending.add(watcher);
+        }
+    }
+
+    protected void add(CheckWatcher watcher) {
+        checkWatchers.add(watcher);
+    }
+
+    protected void add(IdleWatcher watcher) {
+        idleWatchers.add(watcher);
+    }
+
+    protected void add(OffloadWatcher<?> watcher) {
+        activeOffloads++;
+    }
+
+    /**
+     * Called by an active OffloadWatcher when its task completes.
+     */
+    protected void complete(OffloadWatcher<?> watcher) {
+        pending.add(watcher);
+    }
+
+    protected void add(MessageWatcher<?> watcher) {
+        activeMessageWatchers++;
+    }
+
+    /**
+     * Called by an active MessageWatcher when messages were offered.
+     */
+    protected void complete(MessageWatcher<?> watcher) {
+        pending.add(watcher);
     }
 
     protected void remove(Timer timer) {
-        timerQueue.remove(timer);
+        timerStore.remove(timer);
         pending.remove(timer);
     }
 
+    void dirty(IOWatcher watcher) {
+        if (dirtyCount == dirtyWatchers.length) {
+            dirtyWatchers = Arrays.copyOf(dirtyWatchers, dirtyCount * 2);
+        }
+        dirtyWatchers[dirtyCount++] = watcher;
+    }
+
+    /**
+     * Apply the final interest ops of each IOWatcher changed since the last
+     * select.
+     */
+    void applyInterestOps() {
+        for (int i = 0; i < dirtyCount; i++) {
+            dirtyWatchers[i].applyInterestOps();
+            dirtyWatchers[i] = null;
+        }
+        dirtyCount = 0;
+    }
+
     protected void remove(IOWatcher watcher) {
-        activeSelectionKeys.remove(watcher.selectionKey());
+        activeIOWatchers--;
+        pending.remove(watcher);
+    }
+
+    protected void remove(PrepareWatcher watcher) {
+        prepareWatchers.remove(watcher);
+        pending.remove(watcher);
+    }
+
+    protected void remove(CheckWatcher watcher) {
+        checkWatchers.remove(watcher);
+        pending.remove(watcher);
+    }
+
+    protected void remove(IdleWatcher watcher) {
+        idleWatchers.remove(watcher);
         pending.remove(watcher);
     }
 
+    protected void remove(OffloadWatcher<?> watcher) {
+        activeOffloads--;
+        pending.remove(watcher);
+    }
+
+    protected void remove(MessageWatcher<?> watcher) {
+        activeMessageWatchers--;
+        pending.remove(watcher);
+    }
+
+    /**
+     * Each loop iteration queues the active PrepareWatchers, polls for I/O, then
+     * queues ready IOWatchers, expired Timers, IdleWatchers (only if nothing else
+     * is pending) and CheckWatchers.
+     *
+     * @return the next pending watcher to run, or null if the loop should stop
+     *     running, either because it was broken or there are no active watchers.
+     */
     public Watcher next() throws IOException {
         Watcher result = pending.poll();
         if (null != result) {
             return result;
         }
-        now = System.nanoTime();
-        Timer timer = timerQueue.peek();
-        loopIterations++;
-        if (null == timer) {
-            if (activeSelectionKeys.isEmpty()) {
+        do {
+            runTasks();
+            if (break_ != Break.NONE) {
+                return null;
+            }
+            if (!isPrepared) {
+                loopIterations++;
+                isPrepared = true;
+                if (isAlive() && !prepareWatchers.isEmpty()) {
+                    prepareWatchers.addAllTo(pending);
+                    return pending.poll();
+                }
+            }
+            isPrepared = false;
+            if (!isAlive()) {
                 breakOne();
                 return null;
             }
-            selector.select();
+            applyInterestOps();
             now = System.nanoTime();
-        } else {
-            long millis = timer.remainingMillisPriorityQueue(now);
-            if (millis > 0) {
-                selector.select(millis);
-                now = System.nanoTime();
+            if (!idleWatchers.isEmpty() || !pending.isEmpty()) {
+                // Don't block if idle watchers or completions fed by tasks are waiting:
+                select(-1);
+            } else if (timerStore.isEmpty()) {
+                select(0);
+            } else {
+                long timeoutNanos = timerStore.nextExpiryNanos() - now;
+                select(timeoutNanos > 0 ? timeoutNanos : -1);
             }
+            registeredChannels = selector.keys().size();
+            Timer timer;
+            // Group of timers expiring at the same queued deadline, only tracked
+            // with metrics enabled:
+            long groupEndNanos = 0;
+            int groupSize = 0;
+            boolean isGroupSlack = false;
+            while (null != (timer = timerStore.poll(now))) {
+                if (timer.expire()) {
+                    pending.add(timer);
+                    if (null != metrics) {
+                        if (0 == groupSize || timer.queuedEndNanos != groupEndNanos) {
+                            recordCoalesced(groupSize, isGroupSlack);
+                            groupEndNanos = timer.queuedEndNanos;
+                            groupSize = 0;
+                            isGroupSlack = false;
+                        }
+                        groupSize++;
+                        isGroupSlack |= timer.isSlackApplied();
+                    }
+                }
+            }
+            if (null != metrics) {
+                recordCoalesced(groupSize, isGroupSlack);
+            }
+            if (pending.isEmpty()) {
+                idleWatchers.addAllTo(pending);
+            }
+            checkWatchers.addAllTo(pending);
+            if (null != metrics) {
+                metrics.pendingDepth().record(pending.size());
+            }
+            result = pending.poll();
+        } while (null == result);
+        return result;
+    }
+
+    /**
+     * @return true if there are active watchers (other than prepare and check
+     *     watchers) or a {@link #ref()} is outstanding.
+     */
+    private boolean isAlive() {
+        return activeIOWatchers > 0 || !timerStore.isEmpty() || !idleWatchers.isEmpty() || activeOffloads > 0
+            || activeMessageWatchers > 0 || refCount > 0;
+    }
+
+    /**
+     * Keep the event loop running even if there are no active watchers, such
+     * that {@link #run()} only returns after {@link #breakOne()} or
+     * {@link #breakAll()} is called. Each call must be balanced with a call
+     * to {@link #unref()}.
+     */
+    public void ref() {
+        refCount++;
+    }
+
+    /**
+     * Undo a prior call to {@link #ref()}.
+     */
+    public void unref() {
+        refCount--;
+    }
+
+    /**
+     * Thread-safe method to run a task on the thread running this event loop.
+     * Tasks are ran in submission order before the next poll of the selector.
+     *
+     * Submitting from the event loop thread never wakes the selector, and
+     * submitting from other threads wakes the selector at most once per
+     * poll, so a burst of submissions costs one {@link Selector#wakeup()}.
+     *
+     * @param task is the task to run.
+     */
+    public void execute(Runnable task) {
+        if (null == task) {
+            throw new IllegalArgumentException("task must be non-null");
+        }
+        tasks.offer(task);
+        if (Thread.currentThread() != thread && parked.compareAndSet(true, false)) {
+            selector.wakeup();
+            EventLoopMetrics metrics = this.metrics;
+            if (null != metrics) {
+                metrics.recordWakeup();
+            }
+        }
+    }
+
+    /**
+     * Thread-safe method to run a task on the thread running this event loop
+     * after a delay.
+     *
+     * @param task is the task to run.
+     * @param delay is the time from now at which to run the task.
+     * @param unit is the unit of delay.
+     */
+    public void schedule(Runnable task, long delay, TimeUnit unit) {
+        if (null == task) {
+            throw new IllegalArgumentException("task must be non-null");
+        }
+        long endNanos = System.nanoTime() + unit.toNanos(delay);
+        execute(() -> timer(0)
+            .callback(t -> task.run())
+            .afterNanos(Math.max(0, endNanos - now))
+            .start());
+    }
+
+    /**
+     * Thread-safe.
+     *
+     * @return true if the current thread is running this event loop.
+     */
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Timers which expire at the same queued deadline because slack moved at
+     * least one of them share a wakeup, each of the others saved one.
+     */
+    private void recordCoalesced(int groupSize, boolean isGroupSlack) {
+        if (isGroupSlack && groupSize > 1) {
+            metrics.recordCoalescedWakeups(groupSize - 1);
         }
-        for ( SelectionKey key : selector.selectedKeys()) {
-            IOWatcher watcher = (IOWatcher)key.attachment();
+    }
+
+    private void selected(SelectionKey key) {
+        IOWatcher watcher = (IOWatcher)key.attachment();
+        if (watcher.isActive()) {
             pending.add(watcher);
         }
-        while (true) {
-            timer = timerQueue.peek();
-            if (null == timer || timer.remainingMillisPriorityQueue(now) > 0) {
-                break;
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while (null != (task = tasks.poll())) {
+            task.run();
+        }
+    }
+
+    /**
+     * Poll the selector, adding the IOWatchers of ready keys to the pending
+     * queue. The selected-key set is not used, so this does not allocate,
+     * except within the JDK: the JDK 17 epoll selector looks up each ready key
+     * by its boxed file descriptor, which allocates for descriptors above 127
+     * (outside the Integer cache).
+     *
+     * The selector only supports millisecond timeouts, so the timeout is
+     * rounded up to whole milliseconds, unless a Timer with a sub-millisecond
+     * interval is active. Then the selector is blocked for the whole
+     * milliseconds of the timeout and the remainder is waited out by
+     * {@link #finishWait(long)}.
+     *
+     * @param timeoutNanos is the select timeout, 0 to block indefinitely, or
+     *     negative to not block.
+     */
+    private void select(long timeoutNanos) throws IOException {
+        long start = now;
+        long deadline = start + timeoutNanos;
+        if (timeoutNanos < 0) {
+            selector.selectNow(onSelected);
+        } else if (spin(timeoutNanos)) {
+            // Ready without blocking.
+        } else {
+            boolean isPrecise = timeoutNanos > 0 && activePreciseTimers > 0;
+            long remaining = deadline - System.nanoTime();
+            // Milliseconds left after spinning, 0 to block indefinitely:
+            long millis = 0 == timeoutNanos ? 0 :
+                isPrecise ? remaining / MILLIS_NANOS : (remaining + MILLIS_NANOS - 1) / MILLIS_NANOS;
+            int ready = 0;
+            if (0 == timeoutNanos || millis > 0) {
+                parked.set(true);
+                try {
+                    // A task submitted before parked was set did not wakeup the selector:
+                    if (!tasks.isEmpty()) {
+                        ready = selector.selectNow(onSelected);
+                    } else {
+                        ready = selector.select(onSelected, millis);
+                    }
+                } finally {
+                    parked.set(false);
+                }
+            }
+            if (isPrecise && 0 == ready && tasks.isEmpty()) {
+                finishWait(deadline);
+            }
+        }
+        now = System.nanoTime();
+        if (null != metrics) {
+            metrics.selectTime().record(now - start);
+        }
+    }
+
+    /**
+     * Wait for the sub-millisecond remainder of a select timeout: park in
+     * short slices until shortly before the deadline, then spin, polling the
+     * selector and tasks in between so that neither waits for more than a
+     * slice.
+     *
+     * @param deadline is the nanoTime at which to stop waiting.
+     */
+    private void finishWait(long deadline) throws IOException {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            if (selector.selectNow(onSelected) > 0 || !tasks.isEmpty()) {
+                return;
+            }
+            if (remaining > FINISH_SPIN_NANOS) {
+                LockSupport.parkNanos(Math.min(remaining - FINISH_SPIN_NANOS, FINISH_SPIN_NANOS));
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Busy-poll the selector instead of blocking, see {@link #spinMicros(long)}.
+     *
+     * @param timeoutNanos is the select timeout, 0 for no timeout.
+     * @return true if I/O is ready or a task was submitted while spinning.
+     */
+    private boolean spin(long timeoutNanos) throws IOException {
+        if (spinNanos <= 0) {
+            return false;
+        }
+        long budget = adaptiveSpinNanos;
+        boolean isLimited = timeoutNanos > 0 && timeoutNanos < budget;
+        if (isLimited) {
+            budget = timeoutNanos;
+        }
+        long start = System.nanoTime();
+        do {
+            if (selector.selectNow(onSelected) > 0 || !tasks.isEmpty()) {
+                adaptiveSpinNanos = spinNanos;
+                return true;
             }
-            timerQueue.remove(timer);
-            pending.add(timer);
+            Thread.onSpinWait();
+        } while (System.nanoTime() - start < budget);
+        if (!isLimited) {
+            // Nothing happened, so spin less next time:
+            adaptiveSpinNanos = Math.max(spinNanos >> 4, adaptiveSpinNanos >> 1);
         }
-        return pending.poll();
+        return false;
     }
 
     public void breakOne() {
@@ -124,6 +562,10 @@ public class EventLoop implements Iterable<Watcher>, Closeable {
     }
 
     public void run() throws IOException {
+        boolean isOutermost = 0 == loopDepth;
+        if (isOutermost) {
+            thread = Thread.currentThread();
+        }
         try {
             //  Increment loop depth.
             loopDepth++;
@@ -134,13 +576,46 @@ public class EventLoop implements Iterable<Watcher>, Closeable {
                 if (null == watcher) {
                     break;
                 }
-                watcher.run();
+                if (!isWatched) {
+                    runWatcher(watcher);
+                } else {
+                    // Like a seqlock writer: the previous run's even sequence
+                    // must be visible before this run's fields:
+                    VarHandle.storeStoreFence();
+                    runningWatcher = watcher;
+                    runStartNanos = System.nanoTime();
+                    // Ordered stores are sufficient, the Watchdog polls:
+                    runSequence.lazySet(runSequence.get() + 1);
+                    try {
+                        runWatcher(watcher);
+                    } finally {
+                        runningWatcher = null;
+                        runSequence.lazySet(runSequence.get() + 1);
+                    }
+                }
             } while (break_ == Break.NONE);
         } finally {
             if (break_ == Break.ONE) {
                 break_ = Break.NONE;
             }
             loopDepth--;
+            if (isOutermost) {
+                thread = null;
+            }
+        }
+    }
+
+    private void runWatcher(Watcher watcher) throws IOException {
+        EventLoopMetrics metrics = this.metrics;
+        if (null == metrics) {
+            watcher.run();
+        } else {
+            long start = System.nanoTime();
+            try {
+                watcher.run();
+            } finally {
+                metrics.recordCallback(watcher.priority(), System.nanoTime() - start);
+            }
         }
     }
 
@@ -156,17 +631,315 @@ public class EventLoop implements Iterable<Watcher>, Closeable {
         return loopIterations;
     }
 
+    /**
+     * Thread-safe.
+     *
+     * @return the number of channels registered with this event loop as of the
+     *     last loop iteration.
+     */
+    public int registeredChannels() {
+        return registeredChannels;
+    }
+
+    /**
+     * Start recording metrics about this event loop. Recording metrics adds a
+     * few {@link System#nanoTime()} calls per loop iteration and per callback,
+     * when disabled (the default) the overhead is a null check.
+     *
+     * @return the metrics, which may be read by any thread.
+     */
+    public EventLoopMetrics enableMetrics() {
+        if (null == metrics) {
+            metrics = new EventLoopMetrics();
+        }
+        return metrics;
+    }
+
+    /**
+     * Thread-safe.
+     *
+     * @return the metrics, or null if {@link #enableMetrics()} was not called.
+     */
+    public EventLoopMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Called by {@link Watchdog}.
+     */
+    void watched(boolean isWatched) {
+        this.isWatched = isWatched;
+    }
+
+    /**
+     * Called by {@link Watchdog}.
+     *
+     * @return a sequence number which is odd while a watcher is running, and
+     *     changes every time a watcher starts or finishes running.
+     */
+    long runSequence() {
+        return runSequence.get();
+    }
+
+    /**
+     * Called by {@link Watchdog}, only valid if {@link #runSequence()} is odd
+     * and unchanged after this call.
+     */
+    Watcher runningWatcher() {
+        return runningWatcher;
+    }
+
+    /**
+     * Called by {@link Watchdog}, only valid if {@link #runSequence()} is odd
+     * and unchanged after this call.
+     *
+     * @return the {@link System#nanoTime()} when the running watcher started.
+     */
+    long runStartNanos() {
+        return runStartNanos;
+    }
+
+    /**
+     * Thread-safe.
+     *
+     * @return the thread running this event loop, or null if it is not running.
+     */
+    Thread thread() {
+        return thread;
+    }
+
+    /**
+     * Trade CPU for latency: rather than immediately blocking in select, spin
+     * on a non-blocking select for up to this long. Submissions via
+     * {@link #execute(Runnable)} while spinning also avoid a selector wakeup.
+     *
+     * The spin time is adaptive: each spin which ends without I/O or tasks
+     * halves the time of the next spin (down to 1/16th of the maximum), and
+     * any successful spin restores the maximum.
+     *
+     * @param spinMicros is the maximum time to spin, 0 (the default) to always
+     *     block immediately.
+     * @return this for method chaining.
+     */
+    public EventLoop spinMicros(long spinMicros) {
+        if (spinMicros < 0) {
+            throw new IllegalArgumentException("spinMicros must be non-negative, got " + spinMicros);
+        }
+        this.spinNanos = TimeUnit.MICROSECONDS.toNanos(spinMicros);
+        this.adaptiveSpinNanos = spinNanos;
+        return this;
+    }
+
+    public long spinMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(spinNanos);
+    }
+
+    /**
+     * @param runBudget is the maximum number of times a watcher may run per
+     *     loop iteration, see {@link #requeue(Watcher)}.
+     * @return this for method chaining.
+     */
+    public EventLoop runBudget(int runBudget) {
+        if (runBudget <= 0) {
+            throw new IllegalArgumentException("runBudget must be positive, got " + runBudget);
+        }
+        this.runBudget = runBudget;
+        return this;
+    }
+
+    public int runBudget() {
+        return runBudget;
+    }
+
+    /**
+     * Fairness for watchers with more work than they should do in one run (for
+     * example a connection which could keep draining a fast peer): rather than
+     * looping, the callback does a bounded amount of work and requeues the
+     * watcher, which runs again after the other pending watchers of its
+     * priority. Once the watcher has used its {@link #runBudget()} of this loop
+     * iteration it is not requeued, and only runs again if it is still ready
+     * after the next poll.
+     *
+     * @param watcher is a watcher of this event loop.
+     * @return true if the watcher was requeued, false if its budget is used up.
+     */
+    public boolean requeue(Watcher watcher) {
+        if (watcher.eventLoop() != this) {
+            throw new IllegalArgumentException("watcher belongs to a different event loop");
+        }
+        if (watcher.requeueIteration != loopIterations) {
+            watcher.requeueIteration = loopIterations;
+            watcher.requeues = 0;
+        }
+        if (watcher.requeues + 1 >= runBudget) {
+            return false;
+        }
+        watcher.requeues++;
+        pending.add(watcher);
+        return true;
+    }
+
+    /**
+     * @param executor runs the tasks of {@link OffloadWatcher}s which do not
+     *     specify an executor, or null to use the default (virtual threads if
+     *     supported, otherwise a cached thread pool).
+     * @return this for method chaining.
+     */
+    public EventLoop offloadExecutor(Executor executor) {
+        this.offloadExecutor = executor;
+        return this;
+    }
+
+    public Executor offloadExecutor() {
+        return null == offloadExecutor ? OffloadWatcher.defaultExecutor() : offloadExecutor;
+    }
+
+    public TimerStore timerStore() {
+        return timerStore;
+    }
+
     public Timer timer(int priority) {
         return new Timer(this, priority);
     }
 
+    public PeriodicWatcher periodicWatcher(int priority) {
+        return new PeriodicWatcher(this, priority);
+    }
+
+    /**
+     * @param priority of the callback.
+     * @param capacity is the maximum number of queued messages, rounded up
+     *     to a power of two.
+     * @param isSingleProducer is true if only one thread ever offers, which
+     *     makes offers cheaper.
+     * @return a new MessageWatcher, which must be started.
+     */
+    public <T> MessageWatcher<T> messageWatcher(int priority, int capacity, boolean isSingleProducer) {
+        return new MessageWatcher<>(this, priority, capacity, isSingleProducer);
+    }
+
+    public PrepareWatcher prepareWatcher(int priority) {
+        return new PrepareWatcher(this, priority);
+    }
+
+    public CheckWatcher checkWatcher(int priority) {
+        return new CheckWatcher(this, priority);
+    }
+
+    public IdleWatcher idleWatcher(int priority) {
+        return new IdleWatcher(this, priority);
+    }
+
+    /**
+     * @param priority of the callback.
+     * @param task is ran on the {@link #offloadExecutor()} when the watcher is started.
+     * @return a new OffloadWatcher, which must be started.
+     */
+    public <T> OffloadWatcher<T> offload(int priority, Callable<? extends T> task) {
+        return new OffloadWatcher<>(this, priority, task);
+    }
+
+    /**
+     * @param priority of the connection's IOWatcher.
+     * @param channel is registered with this event loop and put in
+     *     non-blocking mode.
+     * @param inboundCapacity is the size of the inbound buffer.
+     * @param writeHighWatermark is the pending outbound bytes at which the
+     *     connection stops being writable, see
+     *     {@link Connection#writeWatermarks(long, long)}.
+     * @return a new Connection, which must be started.
+     */
+    public <C extends SelectableChannel & ScatteringByteChannel & GatheringByteChannel> Connection connection(
+        int priority, C channel, int inboundCapacity, int writeHighWatermark) throws IOException
+    {
+        return new Connection(this, priority, channel, inboundCapacity, writeHighWatermark);
+    }
+
+    /**
+     * @param priority of the watcher's IOWatcher.
+     * @param channel is registered with this event loop and put in
+     *     non-blocking mode.
+     * @param batchSize is the maximum datagrams received or sent per
+     *     readiness event.
+     * @param maxDatagramSize is the size of each pooled receive buffer.
+     * @return a new DatagramWatcher, which must be started.
+     */
+    public DatagramWatcher datagramWatcher(int priority, DatagramChannel channel, int batchSize,
+        int maxDatagramSize) throws IOException
+    {
+        return new DatagramWatcher(this, priority, channel, batchSize, maxDatagramSize);
+    }
+
     public IOWatcher ioWatcher(int priority, SelectableChannel channel) throws IOException {
         SelectionKey key = channel.register(selector, 0);
         IOWatcher watcher = (IOWatcher)key.attachment();
         if (null == watcher) {
             watcher = new IOWatcher(this, priority, key);
             key.attach(watcher);
+            registeredChannels = selector.keys().size();
         }
         return watcher;
     }
+
+    /**
+     * Open a non-blocking connection to a TCP or {@link UnixDomainSocketAddress}
+     * address. Unix domain sockets usually connect immediately, otherwise
+     * CONNECT readiness is awaited by the channel's IOWatcher, which is
+     * stopped before onConnected or onFailed is called (and returned by later
+     * {@link #ioWatcher(int, SelectableChannel)} calls for the channel).
+     *
+     * @param priority of the channel's IOWatcher.
+     * @param address is the address to connect to.
+     * @param onConnected is called on this event loop's thread with the
+     *     connected, non-blocking channel (before this returns if the
+     *     connection was established immediately).
+     * @param onFailed is called on this event loop's thread if the pending
+     *     connection failed, after the channel was closed.
+     * @return the channel, which is not yet connected if the connection
+     *     is pending.
+     * @throws IOException if the connection could not be initiated, in
+     *     which case the channel is closed.
+     */
+    public SocketChannel connect(int priority, SocketAddress address, Callback<SocketChannel> onConnected,
+        Callback<IOException> onFailed) throws IOException
+    {
+        if (null == onConnected || null == onFailed) {
+            throw new IllegalArgumentException("onConnected and onFailed must be non-null");
+        }
+        SocketChannel channel = address instanceof UnixDomainSocketAddress ?
+            SocketChannel.open(StandardProtocolFamily.UNIX) :
+            SocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            if (channel.connect(address)) {
+                onConnected.accept(channel);
+                return channel;
+            }
+            ioWatcher(priority, channel)
+                .callback(w -> {
+                    try {
+                        if (!channel.finishConnect()) {
+                            return;
+                        }
+                    } catch (IOException ex) {
+                        w.stop();
+                        try {
+                            channel.close();
+                        } catch (IOException closeEx) {
+                            ex.addSuppressed(closeEx);
+                        }
+                        onFailed.accept(ex);
+                        return;
+                    }
+                    w.stop();
+                    onConnected.accept(channel);
+                })
+                .interestOps(IOWatcher.Operation.CONNECT)
+                .start();
+        } catch (IOException|RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+        return channel;
+    }
 }
@@ -0,0 +1,264 @@
+package com.brimworks.nio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.SelectableChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Owns N {@link EventLoop}s, each ran by its own thread, so that a single process
+ * can make use of multiple cores. Channels are assigned to a loop via a
+ * {@link ChannelAssignment} strategy, and all callbacks of a channel are ran on
+ * the thread of the loop it was assigned to.
+ *
+ * Typical usage:
+ * <pre>
+ * EventLoopGroup group = new EventLoopGroup(Runtime.getRuntime().availableProcessors());
+ * group.start();
+ * group.ioWatcher(0, socketChannel, watcher -&gt; watcher
+ *     .callback(...)
+ *     .interestOps(IOWatcher.Operation.READ)
+ *     .start());
+ * ...
+ * group.close();
+ * </pre>
+ */
+public class EventLoopGroup implements Closeable {
+    @FunctionalInterface
+    public interface Factory {
+        /**
+         * @param index is the index of the event loop within the group.
+         * @return a new event loop.
+         * @throws IOException if the event loop could not be created.
+         */
+        EventLoop create(int index) throws IOException;
+    }
+
+    private final List<EventLoop> loops;
+    private final ChannelAssignment assignment;
+    // Channels assigned to a loop, but not yet registered by that loop:
+    private final AtomicIntegerArray inFlight;
+    private Thread[] threads;
+    private volatile boolean running = false;
+
+    /**
+     * @param size is the number of event loops (and threads).
+     * @throws IOException if an event loop could not be created.
+     */
+    public EventLoopGroup(int size) throws IOException {
+        this(size, index -> new EventLoop(), ChannelAssignment.roundRobin());
+    }
+
+    /**
+     * @param size is the number of event loops (and threads).
+     * @param factory is used to create each event loop.
+     * @param assignment is the strategy for assigning channels to event loops.
+     * @throws IOException if an event loop could not be created, any event loops
+     *     already created are closed.
+     */
+    public EventLoopGroup(int size, Factory factory, ChannelAssignment assignment) throws IOException {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be positive, got " + size);
+        }
+        List<EventLoop> loops = new ArrayList<>(size);
+        try {
+            for (int i = 0; i < size; i++) {
+                loops.add(factory.create(i));
+            }
+        } catch (IOException|RuntimeException ex) {
+            for (EventLoop loop : loops) {
+                try {
+                    loop.close();
+                } catch (IOException suppressed) {
+                    ex.addSuppressed(suppressed);
+                }
+            }
+            throw ex;
+        }
+        this.loops = Collections.unmodifiableList(loops);
+        this.assignment = assignment;
+        this.inFlight = new AtomicIntegerArray(size);
+    }
+
+    /**
+     * @return the number of event loops in this group.
+     */
+    public int size() {
+        return loops.size();
+    }
+
+    /**
+     * @param index of the event loop.
+     * @return the event loop at the specified index.
+     */
+    public EventLoop eventLoop(int index) {
+        return loops.get(index);
+    }
+
+    /**
+     * @return all event loops of this group.
+     */
+    public List<EventLoop> eventLoops() {
+        return loops;
+    }
+
+    /**
+     * Thread-safe.
+     *
+     * @param index of the event loop.
+     * @return the number of channels registered with the event loop plus
+     *     the number of channels assigned to it but not yet registered.
+     */
+    public int channelCount(int index) {
+        return loops.get(index).registeredChannels() + inFlight.get(index);
+    }
+
+    /**
+     * Thread-safe.
+     *
+     * @return true if {@link #start()} was called, and {@link #stop()} was not.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Start a thread for each event loop. The event loops keep running, even
+     * if they have no active watchers, until {@link #stop()} is called.
+     *
+     * @return this for method chaining.
+     */
+    public synchronized EventLoopGroup start() {
+        if (running) {
+            throw new IllegalStateException("Attempt to start an EventLoopGroup which is already started");
+        }
+        running = true;
+        threads = new Thread[loops.size()];
+        for (int i = 0; i < threads.length; i++) {
+            EventLoop loop = loops.get(i);
+            threads[i] = new Thread(() -> runLoop(loop), "event-loop-" + i);
+            threads[i].start();
+        }
+        return this;
+    }
+
+    /**
+     * Break all event loops and wait for their threads to exit. Watchers
+     * remain registered, so the group may be started again.
+     *
+     * @return this for method chaining.
+     * @throws InterruptedException if interrupted while waiting for the threads.
+     */
+    public synchronized EventLoopGroup stop() throws InterruptedException {
+        if (!running) {
+            return this;
+        }
+        running = false;
+        for (EventLoop loop : loops) {
+            loop.execute(loop::breakAll);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        threads = null;
+        return this;
+    }
+
+    /**
+     * Stop all event loops and close them.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            stop();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        IOException error = null;
+        for (EventLoop loop : loops) {
+            try {
+                loop.close();
+            } catch (IOException ex) {
+                if (null == error) {
+                    error = ex;
+                } else {
+                    error.addSuppressed(ex);
+                }
+            }
+        }
+        if (null != error) {
+            throw error;
+        }
+    }
+
+    /**
+     * Thread-safe. Equivalent to {@code ioWatcher(channel, priority, channel, init)}.
+     */
+    public EventLoop ioWatcher(int priority, SelectableChannel channel, Callback<IOWatcher> init) {
+        return ioWatcher(channel, priority, channel, init);
+    }
+
+    /**
+     * Thread-safe method to assign a channel to one of the event loops and create an
+     * {@link IOWatcher} for it. Since watchers may only be used by the thread running
+     * its event loop, the watcher is passed to the init callback on that thread, where
+     * the callback should setup and start the watcher.
+     *
+     * @param key is passed to the {@link ChannelAssignment} strategy.
+     * @param priority is the priority of the watcher.
+     * @param channel is a non-blocking channel.
+     * @param init is called on the thread of the assigned event loop with
+     *     the newly created watcher.
+     * @return the event loop the channel was assigned to.
+     */
+    public EventLoop ioWatcher(Object key, int priority, SelectableChannel channel, Callback<IOWatcher> init) {
+        return assign(key, loop -> init.accept(loop.ioWatcher(priority, channel)));
+    }
+
+    /**
+     * Thread-safe method to assign a new channel to one of the event loops,
+     * when the channel is registered by init (for example via
+     * {@link EventLoop#connection}). The channel is counted by
+     * {@link #channelCount(int)} while init is pending.
+     *
+     * @param key is passed to the {@link ChannelAssignment} strategy.
+     * @param init is called on the thread of the assigned event loop with
+     *     that event loop.
+     * @return the event loop the channel was assigned to.
+     */
+    public EventLoop assign(Object key, Callback<EventLoop> init) {
+        int index = assignment.choose(this, key);
+        EventLoop loop = loops.get(index);
+        inFlight.incrementAndGet(index);
+        loop.execute(() -> {
+            try {
+                init.accept(loop);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            } finally {
+                inFlight.decrementAndGet(index);
+            }
+        });
+        return loop;
+    }
+
+    private void runLoop(EventLoop loop) {
+        loop.ref();
+        try {
+            while (running) {
+                try {
+                    loop.run();
+                } catch (IOException|RuntimeException ex) {
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, ex);
+                }
+            }
+        } finally {
+            loop.unref();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.brimworks.nio;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics recorded by an {@link EventLoop}, enabled via {@link EventLoop#enableMetrics()}.
+ * All durations are in nanoseconds. The histograms are written by the event loop
+ * thread, and may be read by any thread while the loop is running.
+ */
+public class EventLoopMetrics {
+    private final LatencyHistogram selectTime = new LatencyHistogram();
+    private final LatencyHistogram timerLag = new LatencyHistogram();
+    private final LatencyHistogram pendingDepth = new LatencyHistogram();
+    private final AtomicReferenceArray<LatencyHistogram> callbackTime =
+        new AtomicReferenceArray<>(Watcher.MAX_PRIORITY - Watcher.MIN_PRIORITY + 1);
+    private final LongAdder wakeups = new LongAdder();
+    private final LongAdder coalescedWakeups = new LongAdder();
+
+    /**
+     * @return time spent polling the selector per loop iteration, including
+     *     time spent blocked waiting for I/O or timers.
+     */
+    public LatencyHistogram selectTime() {
+        return selectTime;
+    }
+
+    /**
+     * @return time between the deadline of a timer and its callback running.
+     */
+    public LatencyHistogram timerLag() {
+        return timerLag;
+    }
+
+    /**
+     * @return number of pending watchers after each poll of the selector.
+     */
+    public LatencyHistogram pendingDepth() {
+        return pendingDepth;
+    }
+
+    /**
+     * @param priority is the priority of the watchers.
+     * @return time spent running {@link Watcher#run()} for watchers of the
+     *     specified priority, or null if no watcher of that priority ran.
+     */
+    public LatencyHistogram callbackTime(int priority) {
+        return callbackTime.get(priority - Watcher.MIN_PRIORITY);
+    }
+
+    /**
+     * @return number of times the selector was woken up by another thread
+     *     submitting a task, see {@link EventLoop#execute(Runnable)}.
+     */
+    public long wakeups() {
+        return wakeups.sum();
+    }
+
+    /**
+     * @return number of selector wakeups saved by {@link Timer#slackMillis(long)}:
+     *     whenever several timers expire in one wakeup at the same deadline,
+     *     and slack moved at least one of them to it, all but one of them are
+     *     counted. Timers fired late because the loop was busy are not
+     *     counted, see {@link #timerLag()} for those.
+     */
+    public long coalescedWakeups() {
+        return coalescedWakeups.sum();
+    }
+
+    void recordCallback(int priority, long nanos) {
+        int index = priority - Watcher.MIN_PRIORITY;
+        LatencyHistogram histogram = callbackTime.get(index);
+        if (null == histogram) {
+            histogram = new LatencyHistogram();
+            callbackTime.set(index, histogram);
+        }
+        histogram.record(nanos);
+    }
+
+    void recordWakeup() {
+        wakeups.increment();
+    }
+
+    void recordCoalescedWakeups(long count) {
+        coalescedWakeups.add(count);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("selectTime: ").append(selectTime).append("\n");
+        sb.append("timerLag: ").append(timerLag).append("\n");
+        sb.append("pendingDepth: ").append(pendingDepth).append("\n");
+        for (int priority = Watcher.MAX_PRIORITY; priority >= Watcher.MIN_PRIORITY; priority--) {
+            LatencyHistogram histogram = callbackTime(priority);
+            if (null != histogram) {
+                sb.append("callbackTime[").append(priority).append("]: ").append(histogram).append("\n");
+            }
+        }
+        sb.append("wakeups: ").append(wakeups()).append("\n");
+        sb.append("coalescedWakeups: ").append(coalescedWakeups()).append("\n");
+        return sb.toString();
+    }
+}
@@ -1,5 +1,6 @@
 package com.brimworks.nio;
 
+import java.nio.channels.CancelledKeyException;
 import java.nio.channels.SelectionKey;
 import java.io.IOException;
 
@@ -23,6 +24,9 @@ public class IOWatcher extends Watcher {
     private SelectionKey selectionKey;
     private boolean isActive = false;
     private int interestOps = 0;
+    // Interest ops of the selection key, which are updated before each select:
+    private int appliedOps = 0;
+    boolean isDirty = false;
     private Callback<IOWatcher> callback = w -> {};
 
     protected IOWatcher(EventLoop loop, int priority, SelectionKey selectionKey) {
@@ -50,10 +54,18 @@ public class IOWatcher extends Watcher {
         return interestOps(ops);
     }
 
+    /**
+     * Changes are applied to the selection key just before the event loop's
+     * next select, so toggling interest ops several times per loop iteration
+     * costs at most one {@link SelectionKey#interestOps(int)} call.
+     *
+     * @param ops is the bitwise or of {@link Operation} codes.
+     * @return this for method chaining.
+     */
     public IOWatcher interestOps(int ops) {
         this.interestOps = ops;
         if (isActive) {
-            selectionKey.interestOps(ops);
+            markDirty();
         }
         return this;
     }
@@ -62,6 +74,10 @@ public class IOWatcher extends Watcher {
         return this.interestOps;
     }
 
+    public boolean isActive() {
+        return isActive;
+    }
+
     public SelectionKey selectionKey() {
         return selectionKey;
     }
@@ -88,20 +104,48 @@ public class IOWatcher extends Watcher {
             throw new IllegalStateException(
                 "Attempt to start a watcher without specifying the interestOps");
         }
-        selectionKey.interestOps(interestOps);
-        eventLoop().add(this);
-        isActive = true;
+        if (!isActive) {
+            eventLoop().add(this);
+            isActive = true;
+        }
+        markDirty();
         return this;
     }
 
     @Override
     public IOWatcher stop() {
-        selectionKey.interestOps(0);
-        eventLoop().remove(this);
-        isActive = false;
+        if (isActive) {
+            eventLoop().remove(this);
+            isActive = false;
+            markDirty();
+        }
         return this;
     }
 
+    /**
+     * Called by the event loop before select.
+     */
+    void applyInterestOps() {
+        isDirty = false;
+        int ops = isActive ? interestOps : 0;
+        // Invalid if the channel was closed:
+        if (ops != appliedOps && selectionKey.isValid()) {
+            try {
+                selectionKey.interestOps(ops);
+                appliedOps = ops;
+            } catch (CancelledKeyException ex) {
+                // Closed by another thread since the isValid() check.
+            }
+        }
+    }
+
+    private void markDirty() {
+        if (!isDirty) {
+            isDirty = true;
+            eventLoop().dirty(this);
+        }
+    }
+
     @Override
     public void run() throws IOException {
         if (isActive) {
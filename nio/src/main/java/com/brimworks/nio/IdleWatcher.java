@@ -0,0 +1,62 @@
+package com.brimworks.nio;
+
+import java.io.IOException;
+
+/**
+ * Runs once per loop iteration in which no other watchers are pending, such as
+ * when no I/O is ready and no timers expired. Use this for low priority
+ * background work (for example compaction).
+ *
+ * While any IdleWatcher is active the event loop polls for I/O without blocking,
+ * and keeps running even if there are no other active watchers. Stop the idle
+ * watcher when the background work is done.
+ */
+public class IdleWatcher extends Watcher {
+    private boolean isActive = false;
+    private Callback<IdleWatcher> callback = w -> {};
+
+    protected IdleWatcher(EventLoop loop, int priority) {
+        super(loop, priority);
+    }
+
+    public IdleWatcher callback(Callback<IdleWatcher> callback) {
+        if (null == callback) {
+            throw new IllegalArgumentException("callback must be non-null");
+        }
+        this.callback = callback;
+        return this;
+    }
+
+    public Callback<IdleWatcher> callback() {
+        return this.callback;
+    }
+
+    public boolean isActive() {
+        return isActive;
+    }
+
+    @Override
+    public IdleWatcher start() {
+        if (!isActive) {
+            eventLoop().add(this);
+            isActive = true;
+        }
+        return this;
+    }
+
+    @Override
+    public IdleWatcher stop() {
+        if (isActive) {
+            eventLoop().remove(this);
+            isActive = false;
+        }
+        return this;
+    }
+
+    @Override
+    public void run() throws IOException {
+        if (isActive) {
+            callback.accept(this);
+        }
+    }
+}
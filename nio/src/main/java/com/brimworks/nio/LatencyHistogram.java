@@ -0,0 +1,113 @@
+package com.brimworks.nio;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * HDR-style histogram of non-negative long values (typically nanoseconds), with
+ * log-linear buckets: values below {@value #SUB_BUCKETS} are counted exactly, and
+ * each power of two above that is split into {@value #SUB_BUCKETS} equal buckets,
+ * bounding the relative error of any reported value to about 3%.
+ *
+ * Recording is wait-free and must only be done by a single thread (the event
+ * loop thread). Any thread may read the histogram at any time without stopping
+ * the writer; a reader may observe a recording partially applied (for example
+ * the count but not the max), which is fine for monitoring.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = SUB_BUCKETS + (Long.SIZE - 1 - SUB_BITS) * SUB_BUCKETS;
+
+    // Index BUCKETS is the total count, BUCKETS + 1 is the sum, BUCKETS + 2 is the max:
+    private static final int COUNT = BUCKETS;
+    private static final int SUM = BUCKETS + 1;
+    private static final int MAX = BUCKETS + 2;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS + 3);
+
+    /**
+     * Must only be called by a single thread.
+     *
+     * @param value is recorded, negative values are recorded as 0.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        int index = bucketIndex(value);
+        counts.lazySet(index, counts.get(index) + 1);
+        counts.lazySet(COUNT, counts.get(COUNT) + 1);
+        counts.lazySet(SUM, counts.get(SUM) + value);
+        if (value > counts.get(MAX)) {
+            counts.lazySet(MAX, value);
+        }
+    }
+
+    /**
+     * @return the number of values recorded.
+     */
+    public long count() {
+        return counts.get(COUNT);
+    }
+
+    /**
+     * @return the largest value recorded, or 0 if nothing was recorded.
+     */
+    public long max() {
+        return counts.get(MAX);
+    }
+
+    /**
+     * @return the mean of all values recorded, or 0 if nothing was recorded.
+     */
+    public double mean() {
+        long count = count();
+        return 0 == count ? 0 : (double)counts.get(SUM) / count;
+    }
+
+    /**
+     * @param percentile is between 0 and 100.
+     * @return the (upper bound of the bucket of the) value at the percentile, or
+     *     0 if nothing was recorded.
+     */
+    public long valueAtPercentile(double percentile) {
+        long total = count();
+        if (0 == total) {
+            return 0;
+        }
+        long target = Math.max(1, (long)Math.ceil(total * Math.min(percentile, 100.0) / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(bucketUpperBound(i), max());
+            }
+        }
+        return max();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.1f p50=%d p90=%d p99=%d p99.9=%d max=%d",
+            count(), mean(), valueAtPercentile(50), valueAtPercentile(90),
+            valueAtPercentile(99), valueAtPercentile(99.9), max());
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int)value;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int)((value >>> shift) - SUB_BUCKETS);
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        long sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        long lower = (SUB_BUCKETS + sub) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,179 @@
+package com.brimworks.nio;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Bounded, lock-free channel of messages from other threads (typically other
+ * event loops of an {@link EventLoopGroup}) to this watcher's event loop, so
+ * loops can pass requests to the loop owning some state instead of sharing
+ * it:
+ *
+ * <pre>
+ * MessageWatcher&lt;Request&gt; inbox = loopB.messageWatcher(0, 1024, false)
+ *     .receiver(request -&gt; ...)
+ *     .start();
+ * // On loop A:
+ * if (!inbox.offer(request)) {
+ *     // Full, apply backpressure.
+ * }
+ * </pre>
+ *
+ * Messages are drained in batches: the first offer after the watcher was
+ * drained schedules it with {@link EventLoop#execute(Runnable)}, which only
+ * wakes the selector if the destination loop is parked, and later offers
+ * just enqueue. Each run receives up to {@link #batchSize()} messages in
+ * offer order (per producer).
+ *
+ * The watcher is active (and keeps the event loop alive) from start() until
+ * stop(). Messages offered while stopped are received once started.
+ *
+ * @param <T> is the type of the messages.
+ */
+public class MessageWatcher<T> extends Watcher {
+    @FunctionalInterface
+    public interface Receiver<T> {
+        /**
+         * @param message is the message to handle, on the event loop thread.
+         * @throws IOException if the message could not be handled.
+         */
+        void receive(T message) throws IOException;
+    }
+
+    private final MpscArrayQueue<T> queue;
+    // True from the first offer after draining until the next run:
+    private final AtomicBoolean isScheduled = new AtomicBoolean(false);
+    // Allocated once, so scheduling only allocates the execute() task node:
+    private final Runnable onScheduled = this::scheduled;
+    private Receiver<? super T> receiver = message -> {};
+    private int batchSize;
+    private boolean isActive = false;
+
+    protected MessageWatcher(EventLoop loop, int priority, int capacity, boolean isSingleProducer) {
+        super(loop, priority);
+        this.queue = new MpscArrayQueue<>(capacity, isSingleProducer);
+        this.batchSize = queue.capacity();
+    }
+
+    /**
+     * @param receiver is called for each message.
+     * @return this for method chaining.
+     */
+    public MessageWatcher<T> receiver(Receiver<? super T> receiver) {
+        if (null == receiver) {
+            throw new IllegalArgumentException("receiver must be non-null");
+        }
+        this.receiver = receiver;
+        return this;
+    }
+
+    public Receiver<? super T> receiver() {
+        return receiver;
+    }
+
+    /**
+     * @param batchSize is the maximum messages received per run, after which
+     *     the watcher is scheduled again so other watchers run first. Defaults
+     *     to the capacity.
+     * @return this for method chaining.
+     */
+    public MessageWatcher<T> batchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive, got " + batchSize);
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public int batchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return the maximum number of queued messages.
+     */
+    public int capacity() {
+        return queue.capacity();
+    }
+
+    public boolean isActive() {
+        return isActive;
+    }
+
+    /**
+     * Thread-safe (but only from a single thread if the watcher was created
+     * as single producer). Does not block or allocate, except for scheduling
+     * the first message of a batch.
+     *
+     * @param message is queued to be received on the event loop thread.
+     * @return false if the queue is full, in which case the message is not
+     *     queued.
+     */
+    public boolean offer(T message) {
+        if (null == message) {
+            throw new IllegalArgumentException("message must be non-null");
+        }
+        if (!queue.offer(message)) {
+            return false;
+        }
+        schedule();
+        return true;
+    }
+
+    @Override
+    public MessageWatcher<T> start() {
+        if (!isActive) {
+            eventLoop().add(this);
+            isActive = true;
+            // Any schedule while stopped was ignored:
+            isScheduled.set(false);
+            if (!queue.isEmpty()) {
+                schedule();
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Stop receiving, queued messages are kept.
+     */
+    @Override
+    public MessageWatcher<T> stop() {
+        if (isActive) {
+            eventLoop().remove(this);
+            isActive = false;
+        }
+        return this;
+    }
+
+    @Override
+    public void run() throws IOException {
+        if (!isActive) {
+            return;
+        }
+        // Cleared before draining, so a concurrent offer schedules again:
+        isScheduled.set(false);
+        try {
+            T message;
+            for (int i = 0; i < batchSize && null != (message = queue.poll()); i++) {
+                receiver.receive(message);
+            }
+        } finally {
+            if (isActive && !queue.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+
+    private void schedule() {
+        if (isScheduled.compareAndSet(false, true)) {
+            eventLoop().execute(onScheduled);
+        }
+    }
+
+    private void scheduled() {
+        if (isActive) {
+            eventLoop().complete(this);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.brimworks.nio;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Bounded lock-free multi-producer single-consumer queue backed by an array
+ * (see Dmitry Vyukov's "Bounded MPMC queue", restricted to one consumer). Any
+ * thread may {@link #offer(Object)}, but only a single thread may
+ * {@link #poll()}. Unlike {@link MpscQueue}, offering does not allocate.
+ *
+ * Each slot has a sequence number which tells producers and the consumer
+ * whose turn it is, so they never touch the same slot concurrently. If there
+ * is only a single producer thread, the producers' compare and set of the
+ * tail is replaced by a plain store.
+ */
+class MpscArrayQueue<E> {
+    private static final VarHandle TAIL;
+    private static final VarHandle SEQUENCE = MethodHandles.arrayElementVarHandle(long[].class);
+    static {
+        try {
+            TAIL = MethodHandles.lookup().findVarHandle(MpscArrayQueue.class, "tail", long.class);
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private final boolean isSingleProducer;
+    private final int mask;
+    private final Object[] values;
+    // Sequence of each slot: index while free for the producer of that index,
+    // index + 1 once offered, and index + capacity once polled:
+    private final long[] sequences;
+    // Index of the next slot to offer, updated by producers:
+    @SuppressWarnings("unused") // Accessed via TAIL
+    private volatile long tail;
+    // Index of the next slot to poll, only accessed by the consumer:
+    private long head;
+
+    /**
+     * @param capacity is the maximum number of values in the queue, rounded
+     *     up to a power of two.
+     * @param isSingleProducer is true if only one thread ever offers.
+     */
+    MpscArrayQueue(int capacity, boolean isSingleProducer) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity must be in [1, 2^30], got " + capacity);
+        }
+        int size = 1 == capacity ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.isSingleProducer = isSingleProducer;
+        this.mask = size - 1;
+        this.values = new Object[size];
+        this.sequences = new long[size];
+        for (int i = 0; i < size; i++) {
+            sequences[i] = i;
+        }
+    }
+
+    /**
+     * @return the maximum number of values in the queue.
+     */
+    int capacity() {
+        return values.length;
+    }
+
+    /**
+     * Thread-safe, unless the queue is single producer, in which case only
+     * that producer may call this.
+     *
+     * @param value is added to the end of the queue.
+     * @return false if the queue is full.
+     */
+    boolean offer(E value) {
+        long index;
+        if (isSingleProducer) {
+            index = (long)TAIL.get(this);
+            if ((long)SEQUENCE.getVolatile(sequences, (int)index & mask) != index) {
+                return false;
+            }
+            TAIL.setOpaque(this, index + 1);
+        } else {
+            while (true) {
+                index = (long)TAIL.getVolatile(this);
+                long sequence = (long)SEQUENCE.getVolatile(sequences, (int)index & mask);
+                if (sequence < index) {
+                    // Not yet polled since the previous lap:
+                    return false;
+                }
+                if (sequence == index && TAIL.compareAndSet(this, index, index + 1)) {
+                    break;
+                }
+                // Another producer claimed the slot first, retry with the next.
+            }
+        }
+        int slot = (int)index & mask;
+        values[slot] = value;
+        SEQUENCE.setVolatile(sequences, slot, index + 1);
+        return true;
+    }
+
+    /**
+     * Must only be called by the consumer thread.
+     *
+     * @return the first value in the queue, or null if the queue is empty (or
+     *     if the producer of the first value is in the middle of an offer).
+     */
+    @SuppressWarnings("unchecked")
+    E poll() {
+        int slot = (int)head & mask;
+        if ((long)SEQUENCE.getVolatile(sequences, slot) != head + 1) {
+            return null;
+        }
+        E value = (E)values[slot];
+        values[slot] = null;
+        SEQUENCE.setRelease(sequences, slot, head + values.length);
+        head++;
+        return value;
+    }
+
+    /**
+     * Must only be called by the consumer thread.
+     *
+     * @return true if there are no values which are completely offered.
+     */
+    boolean isEmpty() {
+        return (long)SEQUENCE.getVolatile(sequences, (int)head & mask) != head + 1;
+    }
+}
@@ -0,0 +1,85 @@
+package com.brimworks.nio;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Unbounded lock-free multi-producer single-consumer queue (see Dmitry Vyukov's
+ * "Non-intrusive MPSC node-based queue"). Any thread may {@link #offer(Object)},
+ * but only a single thread may {@link #poll()}.
+ *
+ * Producers never spin or retry: each offer is a single atomic exchange.
+ */
+class MpscQueue<E> {
+    private static final VarHandle HEAD;
+    private static final VarHandle NEXT;
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            HEAD = lookup.findVarHandle(MpscQueue.class, "head", Node.class);
+            NEXT = lookup.findVarHandle(Node.class, "next", Node.class);
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private static final class Node<E> {
+        private E value;
+        @SuppressWarnings("unused") // Accessed via NEXT
+        private volatile Node<E> next;
+
+        private Node(E value) {
+            this.value = value;
+        }
+    }
+
+    // Most recently offered node, updated by producers:
+    @SuppressWarnings("unused") // Accessed via HEAD
+    private volatile Node<E> head;
+    // Node before the next node to poll, only accessed by the consumer:
+    private Node<E> tail;
+
+    MpscQueue() {
+        tail = new Node<>(null);
+        head = tail;
+    }
+
+    /**
+     * Thread-safe.
+     *
+     * @param value is added to the end of the queue.
+     */
+    @SuppressWarnings("unchecked")
+    void offer(E value) {
+        Node<E> node = new Node<>(value);
+        Node<E> prev = (Node<E>)HEAD.getAndSet(this, node);
+        NEXT.setVolatile(prev, node);
+    }
+
+    /**
+     * Must only be called by the consumer thread.
+     *
+     * @return the first value in the queue, or null if the queue is empty (or
+     *     if a producer is in the middle of an offer).
+     */
+    @SuppressWarnings("unchecked")
+    E poll() {
+        Node<E> next = (Node<E>)NEXT.getAcquire(tail);
+        if (null == next) {
+            return null;
+        }
+        E value = next.value;
+        next.value = null;
+        tail = next;
+        return value;
+    }
+
+    /**
+     * Must only be called by the consumer thread.
+     *
+     * @return true if there are no values which are completely offered.
+     */
+    boolean isEmpty() {
+        return null == NEXT.getVolatile(tail);
+    }
+}
@@ -0,0 +1,217 @@
+package com.brimworks.nio;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Runs a (possibly blocking) task on another thread, then becomes pending on the
+ * event loop once the task completes so the callback can use the result on
+ * the event loop thread. Use this for blocking work such as disk I/O or JDBC
+ * which must not be done in a callback.
+ *
+ * The task runs on the {@link #executor(Executor)}, which defaults to
+ * {@link EventLoop#offloadExecutor()}. Completions are handed back via
+ * {@link EventLoop#execute(Runnable)}, so a burst of completions costs at most
+ * one selector wakeup.
+ *
+ * The watcher is active (and keeps the event loop alive) from start() until
+ * the callback runs, after which it may be started again to re-run the task.
+ *
+ * @param <T> is the type of the result of the task.
+ */
+public class OffloadWatcher<T> extends Watcher {
+    private Callable<? extends T> task;
+    private Executor executor;
+    private Callback<OffloadWatcher<T>> callback = w -> {};
+    // Non-null while the task is outstanding:
+    private FutureTask<T> future;
+    private boolean isCompleted = false;
+    private T result;
+    private Throwable error;
+
+    protected OffloadWatcher(EventLoop loop, int priority, Callable<? extends T> task) {
+        super(loop, priority);
+        task(task);
+    }
+
+    public OffloadWatcher<T> task(Callable<? extends T> task) {
+        if (null == task) {
+            throw new IllegalArgumentException("task must be non-null");
+        }
+        this.task = task;
+        return this;
+    }
+
+    public Callable<? extends T> task() {
+        return task;
+    }
+
+    /**
+     * @param executor runs the task, or null to use the event loop's
+     *     {@link EventLoop#offloadExecutor()}.
+     * @return this for method chaining.
+     */
+    public OffloadWatcher<T> executor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    public Executor executor() {
+        return null == executor ? eventLoop().offloadExecutor() : executor;
+    }
+
+    public OffloadWatcher<T> callback(Callback<OffloadWatcher<T>> callback) {
+        if (null == callback) {
+            throw new IllegalArgumentException("callback must be non-null");
+        }
+        this.callback = callback;
+        return this;
+    }
+
+    public Callback<OffloadWatcher<T>> callback() {
+        return this.callback;
+    }
+
+    /**
+     * @return true if the task is outstanding, or completed but the callback
+     *     has not ran yet.
+     */
+    public boolean isActive() {
+        return null != future || isCompleted;
+    }
+
+    /**
+     * @return the value returned by the task, or null if it failed. Only valid
+     *     in the callback.
+     */
+    public T result() {
+        return result;
+    }
+
+    /**
+     * @return the exception thrown by the task, or null if it succeeded. Only
+     *     valid in the callback.
+     */
+    public Throwable error() {
+        return error;
+    }
+
+    /**
+     * Submit the task to the executor.
+     *
+     * @throws java.util.concurrent.RejectedExecutionException if the executor
+     *     rejects the task, in which case the watcher is not started.
+     */
+    @Override
+    public OffloadWatcher<T> start() {
+        if (isActive()) {
+            throw new IllegalStateException("Attempt to start an OffloadWatcher which is already started");
+        }
+        EventLoop loop = eventLoop();
+        FutureTask<T> future = new FutureTask<T>(task::call) {
+            @Override
+            protected void done() {
+                if (!isCancelled()) {
+                    loop.execute(() -> complete(this));
+                }
+            }
+        };
+        this.future = future;
+        loop.add(this);
+        try {
+            executor().execute(future);
+        } catch (RuntimeException ex) {
+            this.future = null;
+            loop.remove(this);
+            throw ex;
+        }
+        return this;
+    }
+
+    /**
+     * Cancel the task (interrupting it if it is running) so the callback is
+     * not called.
+     */
+    @Override
+    public OffloadWatcher<T> stop() {
+        if (isActive()) {
+            if (null != future) {
+                future.cancel(true);
+                future = null;
+            }
+            isCompleted = false;
+            result = null;
+            error = null;
+            eventLoop().remove(this);
+        }
+        return this;
+    }
+
+    @Override
+    public void run() throws IOException {
+        if (!isCompleted) {
+            return;
+        }
+        isCompleted = false;
+        eventLoop().remove(this);
+        try {
+            callback.accept(this);
+        } finally {
+            result = null;
+            error = null;
+        }
+    }
+
+    // Called on the event loop thread when a task completes:
+    private void complete(FutureTask<T> completed) {
+        if (completed != future) {
+            // Stopped, or stopped and started again:
+            return;
+        }
+        future = null;
+        try {
+            result = completed.get();
+            error = null;
+        } catch (ExecutionException ex) {
+            result = null;
+            error = ex.getCause();
+        } catch (CancellationException | InterruptedException ex) {
+            result = null;
+            error = ex;
+        }
+        isCompleted = true;
+        eventLoop().complete(this);
+    }
+
+    /**
+     * @return an executor which runs each task in a new virtual thread if
+     *     supported (JDK 21+), otherwise a cached pool of daemon threads.
+     */
+    static Executor defaultExecutor() {
+        return DefaultExecutor.INSTANCE;
+    }
+
+    // Lazily initialized holder:
+    private static class DefaultExecutor {
+        private static final Executor INSTANCE = create();
+
+        private static Executor create() {
+            try {
+                Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (Executor)method.invoke(null);
+            } catch (ReflectiveOperationException | UnsupportedOperationException ex) {
+                return Executors.newCachedThreadPool(runnable -> {
+                    Thread thread = new Thread(runnable, "event-loop-offload");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+    }
+}
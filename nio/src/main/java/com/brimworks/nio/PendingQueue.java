@@ -0,0 +1,92 @@
+package com.brimworks.nio;
+
+/**
+ * Queue of watchers which are ready to run. There is a FIFO per priority level,
+ * implemented as an intrusive doubly linked list through the watchers, and a
+ * bitmap of non-empty levels. Therefore add, poll and remove are all O(1) and
+ * do not allocate.
+ *
+ * Watchers are polled highest priority first, and in the order they were
+ * added within a priority. A watcher is in the queue at most once.
+ */
+class PendingQueue {
+    private static final int LEVELS = Watcher.MAX_PRIORITY - Watcher.MIN_PRIORITY + 1;
+
+    private final Watcher[] heads = new Watcher[LEVELS];
+    private final Watcher[] tails = new Watcher[LEVELS];
+    // Bit N is set if level N is non-empty:
+    private long occupied = 0;
+    private int size = 0;
+
+    /**
+     * @param watcher is added to the end of its priority's FIFO, nothing
+     *     happens if the watcher is already pending.
+     */
+    void add(Watcher watcher) {
+        if (watcher.isPending) {
+            return;
+        }
+        int level = watcher.priority() - Watcher.MIN_PRIORITY;
+        Watcher tail = tails[level];
+        watcher.pendingPrev = tail;
+        watcher.pendingNext = null;
+        if (null == tail) {
+            heads[level] = watcher;
+            occupied |= 1L << level;
+        } else {
+            tail.pendingNext = watcher;
+        }
+        tails[level] = watcher;
+        watcher.isPending = true;
+        size++;
+    }
+
+    /**
+     * @return the first watcher with the highest priority, or null if
+     *     the queue is empty.
+     */
+    Watcher poll() {
+        if (0 == occupied) {
+            return null;
+        }
+        Watcher watcher = heads[Long.SIZE - 1 - Long.numberOfLeadingZeros(occupied)];
+        remove(watcher);
+        return watcher;
+    }
+
+    /**
+     * @param watcher is removed from the queue, nothing happens if the
+     *     watcher is not pending.
+     */
+    void remove(Watcher watcher) {
+        if (!watcher.isPending) {
+            return;
+        }
+        int level = watcher.priority() - Watcher.MIN_PRIORITY;
+        if (null == watcher.pendingPrev) {
+            heads[level] = watcher.pendingNext;
+        } else {
+            watcher.pendingPrev.pendingNext = watcher.pendingNext;
+        }
+        if (null == watcher.pendingNext) {
+            tails[level] = watcher.pendingPrev;
+        } else {
+            watcher.pendingNext.pendingPrev = watcher.pendingPrev;
+        }
+        if (null == heads[level]) {
+            occupied &= ~(1L << level);
+        }
+        watcher.pendingNext = null;
+        watcher.pendingPrev = null;
+        watcher.isPending = false;
+        size--;
+    }
+
+    boolean isEmpty() {
+        return 0 == size;
+    }
+
+    int size() {
+        return size;
+    }
+}
@@ -0,0 +1,213 @@
+package com.brimworks.nio;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fires at fixed times: offset + N * interval from an anchor (like libev's
+ * ev_periodic). Unlike a repeating {@link Timer}, the schedule does not drift
+ * with callback time or loop lag. Ticks which are missed (for example while
+ * the loop was busy) are collapsed into the next callback, see
+ * {@link #missedTicks()}, rather than fired in a burst.
+ *
+ * Each tick costs a single {@link TimerStore} add, since the next tick is
+ * computed when the current tick fires.
+ */
+public class PeriodicWatcher extends Watcher {
+    public enum Anchor {
+        /**
+         * Ticks are at offset + N * interval since the Unix epoch, for example an
+         * interval of one minute fires at the start of each minute of the wall
+         * clock. The wall clock is re-read every tick, so the schedule follows
+         * clock adjustments (with millisecond precision).
+         */
+        WALL_CLOCK,
+        /**
+         * Ticks are at offset + N * interval since {@link #start()}.
+         */
+        MONOTONIC
+    }
+
+    private final Timer timer;
+    private Anchor anchor = Anchor.MONOTONIC;
+    private long offsetNanos = 0;
+    private long intervalNanos = 0;
+    private Callback<PeriodicWatcher> callback = w -> {};
+    // Anchor timebase value of start():
+    private long startNanos;
+    // Anchor timebase value of the next tick:
+    private long scheduledNanos;
+    // Anchor timebase value of the tick being fired:
+    private long tickNanos;
+    private long missedTicks = 0;
+
+    protected PeriodicWatcher(EventLoop loop, int priority) {
+        super(loop, priority);
+        this.timer = loop.timer(priority).callback(t -> run());
+    }
+
+    public PeriodicWatcher callback(Callback<PeriodicWatcher> callback) {
+        if (null == callback) {
+            throw new IllegalArgumentException("callback must be non-null");
+        }
+        this.callback = callback;
+        return this;
+    }
+
+    public Callback<PeriodicWatcher> callback() {
+        return this.callback;
+    }
+
+    public Anchor anchor() {
+        return anchor;
+    }
+
+    public PeriodicWatcher anchor(Anchor anchor) {
+        checkInactive("anchor");
+        if (null == anchor) {
+            throw new IllegalArgumentException("anchor must be non-null");
+        }
+        this.anchor = anchor;
+        return this;
+    }
+
+    public long offsetNanos() {
+        return offsetNanos;
+    }
+
+    /**
+     * @param offsetNanos is the time of the first tick relative to the anchor.
+     * @return this for method chaining.
+     */
+    public PeriodicWatcher offsetNanos(long offsetNanos) {
+        checkInactive("offset");
+        this.offsetNanos = offsetNanos;
+        return this;
+    }
+
+    public PeriodicWatcher offsetMillis(long offsetMillis) {
+        return offsetNanos(TimeUnit.MILLISECONDS.toNanos(offsetMillis));
+    }
+
+    public long intervalNanos() {
+        return intervalNanos;
+    }
+
+    /**
+     * @param intervalNanos is the time between ticks, or 0 to fire once at the
+     *     offset (or immediately if that is in the past).
+     * @return this for method chaining.
+     */
+    public PeriodicWatcher intervalNanos(long intervalNanos) {
+        checkInactive("interval");
+        if (intervalNanos < 0) {
+            throw new IllegalArgumentException("interval must be non-negative, got " + intervalNanos);
+        }
+        this.intervalNanos = intervalNanos;
+        return this;
+    }
+
+    public PeriodicWatcher intervalMillis(long intervalMillis) {
+        return intervalNanos(TimeUnit.MILLISECONDS.toNanos(intervalMillis));
+    }
+
+    public boolean isActive() {
+        return timer.isActive();
+    }
+
+    /**
+     * @return the scheduled time of the tick being fired relative to the
+     *     anchor, in nanoseconds since the epoch for {@link Anchor#WALL_CLOCK}
+     *     and since start() for {@link Anchor#MONOTONIC}. Only valid in the
+     *     callback.
+     */
+    public long tickNanos() {
+        return tickNanos - (Anchor.MONOTONIC == anchor ? startNanos : 0);
+    }
+
+    /**
+     * @return the number of ticks before this one which were skipped, since
+     *     they were already in the past when this tick fired. Only valid in
+     *     the callback.
+     */
+    public long missedTicks() {
+        return missedTicks;
+    }
+
+    @Override
+    public PeriodicWatcher start() {
+        if (timer.isActive()) {
+            throw new IllegalStateException("Attempt to start a PeriodicWatcher which is already started");
+        }
+        long now = clockNanos();
+        startNanos = now;
+        long base = Anchor.MONOTONIC == anchor ? startNanos : 0;
+        scheduledNanos = base + offsetNanos;
+        if (intervalNanos > 0 && scheduledNanos - now < 0) {
+            // First tick after now:
+            scheduledNanos += ceilDiv(now - scheduledNanos, intervalNanos) * intervalNanos;
+        }
+        missedTicks = 0;
+        startTimer(now);
+        return this;
+    }
+
+    @Override
+    public PeriodicWatcher stop() {
+        timer.stop();
+        return this;
+    }
+
+    /**
+     * Called by the inner timer when the scheduled tick is reached.
+     */
+    @Override
+    public void run() throws IOException {
+        if (timer.isActive()) {
+            return;
+        }
+        long now = clockNanos();
+        missedTicks = 0;
+        if (intervalNanos > 0) {
+            // Collapse ticks which are already in the past:
+            long late = now - scheduledNanos;
+            if (late > 0) {
+                missedTicks = late / intervalNanos;
+                scheduledNanos += missedTicks * intervalNanos;
+            }
+            tickNanos = scheduledNanos;
+            scheduledNanos += intervalNanos;
+            // Schedule before the callback, so the callback may stop():
+            startTimer(now);
+        } else {
+            tickNanos = scheduledNanos;
+        }
+        callback.accept(this);
+    }
+
+    private void startTimer(long now) {
+        long delay = scheduledNanos - now;
+        if (Anchor.WALL_CLOCK == anchor) {
+            // Timers are relative to the cached loop time, which may be stale:
+            delay += System.nanoTime() - eventLoop().nanoTime();
+        }
+        timer.afterNanos(Math.max(0, delay)).start();
+    }
+
+    private long clockNanos() {
+        if (Anchor.WALL_CLOCK == anchor) {
+            return TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        }
+        return eventLoop().nanoTime();
+    }
+
+    private void checkInactive(String name) {
+        if (timer.isActive()) {
+            throw new IllegalStateException("Attempt to set " + name + " when periodic watcher is already started");
+        }
+    }
+
+    private static long ceilDiv(long x, long y) {
+        return -Math.floorDiv(-x, y);
+    }
+}
@@ -0,0 +1,63 @@
+package com.brimworks.nio;
+
+import java.io.IOException;
+
+/**
+ * Runs once per loop iteration, just before the event loop polls for I/O. Use
+ * this to flush batched writes before blocking in the selector.
+ *
+ * A PrepareWatcher started after this iteration's prepare watchers ran (by
+ * another prepare watcher or an {@link EventLoop#execute(Runnable)} task) still
+ * runs before the poll.
+ *
+ * An active PrepareWatcher does not keep the event loop running by itself.
+ */
+public class PrepareWatcher extends Watcher {
+    private boolean isActive = false;
+    private Callback<PrepareWatcher> callback = w -> {};
+
+    protected PrepareWatcher(EventLoop loop, int priority) {
+        super(loop, priority);
+    }
+
+    public PrepareWatcher callback(Callback<PrepareWatcher> callback) {
+        if (null == callback) {
+            throw new IllegalArgumentException("callback must be non-null");
+        }
+        this.callback = callback;
+        return this;
+    }
+
+    public Callback<PrepareWatcher> callback() {
+        return this.callback;
+    }
+
+    public boolean isActive() {
+        return isActive;
+    }
+
+    @Override
+    public PrepareWatcher start() {
+        if (!isActive) {
+            eventLoop().add(this);
+            isActive = true;
+        }
+        return this;
+    }
+
+    @Override
+    public PrepareWatcher stop() {
+        if (isActive) {
+            eventLoop().remove(this);
+            isActive = false;
+        }
+        return this;
+    }
+
+    @Override
+    public void run() throws IOException {
+        if (isActive) {
+            callback.accept(this);
+        }
+    }
+}
@@ -38,6 +38,13 @@ public class RingByteBuffer implements Comparable<RingByteBuffer> {
     private int begin; // offset where valid bytes begin.
     private int size;  // total number of valid bytes. Full if size == buff.capacity()
 
+    // Reusable views of the valid bytes, used by WriteQueue:
+    private ByteBuffer gatherView0;
+    private ByteBuffer gatherView1;
+    private boolean isGathered = false;
+    // Bytes at the front queued by a WriteQueue, so adding the ring again is O(1):
+    private int queued = 0;
+
     /**
      * @param capacity is the max bytes that can be contained.
      * @return a new RingByteBuffer with nothing in it.
@@ -142,13 +149,15 @@ public class RingByteBuffer implements Comparable<RingByteBuffer> {
             minCapacity = 2 * capacity;
         }
         RingByteBuffer result = RingByteBuffer.allocate(minCapacity);
+        int end = begin + size;
+        buff.limit(capacity);
         buff.position(begin);
-        if (begin + size > capacity) {
-            buff.limit(capacity);
+        if (end > capacity) {
             result.buff.put(buff);
             buff.position(0);
+            end -= capacity;
         }
-        buff.limit((begin + size) % capacity);
+        buff.limit(end);
         result.buff.put(buff);
         result.size = size;
         return result;
@@ -168,6 +177,8 @@ public class RingByteBuffer implements Comparable<RingByteBuffer> {
             return 0;
         }
         int capacity = buff.capacity();
+        // Reset the limit first, the prior operation may have left it below the position:
+        buff.limit(capacity);
         buff.position(begin);
         if (begin + size <= capacity) {
             buff.limit(begin + size);
@@ -191,13 +202,76 @@ public class RingByteBuffer implements Comparable<RingByteBuffer> {
         return count;
     }
 
+    /**
+     * Used by {@link WriteQueue} to add views of the first count valid bytes to
+     * an array for a gathering write, without allocating. Each call must be
+     * followed by a call to {@link #ungather()} after the write.
+     *
+     * @param dst is the array of buffers to gather.
+     * @param offset is the index in dst of the first view.
+     * @param count is the number of valid bytes to view, at most size().
+     * @return the index in dst after the last view (offset + 0 to 2).
+     */
+    int gather(ByteBuffer[] dst, int offset, int count) {
+        if (null == gatherView0) {
+            gatherView0 = buff.duplicate();
+            gatherView1 = buff.duplicate();
+        }
+        int capacity = buff.capacity();
+        int end = begin + count;
+        gatherView0.limit(Math.min(end, capacity));
+        gatherView0.position(begin);
+        gatherView1.limit(0);
+        dst[offset++] = gatherView0;
+        if (end > capacity) {
+            gatherView1.limit(end - capacity);
+            dst[offset++] = gatherView1;
+        }
+        isGathered = true;
+        return offset;
+    }
+
+    /**
+     * Remove the bytes written from the views returned by the last
+     * {@link #gather(ByteBuffer[], int, int)}.
+     *
+     * @return the number of bytes removed.
+     */
+    int ungather() {
+        isGathered = false;
+        int count = gatherView0.position() - begin + gatherView1.position();
+        begin = (begin + count) % buff.capacity();
+        size -= count;
+        return count;
+    }
+
+    /**
+     * @return true between calls to gather() and ungather().
+     */
+    boolean isGathered() {
+        return isGathered;
+    }
+
+    /**
+     * @return the valid bytes at the front already queued by a
+     *     {@link WriteQueue}.
+     */
+    int queued() {
+        return queued;
+    }
+
+    void queued(int queued) {
+        this.queued = queued;
+    }
+
     /**
      * @param channel is either ignored (if no valid bytes), or the
      *     {@link ScatteringByteChannel#read(ByteBuffer)} method is called if invalid
      *     bytes do not "wrap around", or the
      *     {@link ScatteringByteChannel#read(ByteBuffer[])} method is called with an
      *     array of length 2.
-     * @return the result from the read() method call or 0 if no invalid bytes.
+     * @return the result from the read() method call (-1 at end-of-stream) or
+     *     0 if no invalid bytes.
      * @throws IOException if channel read method throws.
      * @throws ReadOnlyBufferException if this is a read-only buffer.
      */
@@ -211,11 +285,15 @@ public class RingByteBuffer implements Comparable<RingByteBuffer> {
         }
         int invalidBegin = (begin + size) % capacity;
         int invalidSize = capacity - size;
+        // Reset the limit first, the prior operation may have left it below the position:
+        buff.limit(capacity);
         buff.position(invalidBegin);
         if (invalidBegin + invalidSize <= capacity) {
             buff.limit(invalidBegin + invalidSize);
             long count = channel.read(buff.slice());
-            size += count;
+            if (count > 0) {
+                size += count;
+            }
             return count;
         }
         buff.limit(buff.capacity());
@@ -228,7 +306,9 @@ public class RingByteBuffer implements Comparable<RingByteBuffer> {
         buff.limit((invalidBegin + invalidSize) % capacity);
         buffs[1] = buff.slice();
         long count = channel.read(buffs);
-        size += count;
+        if (count > 0) {
+            size += count;
+        }
         return count;
     }
 
@@ -396,14 +476,14 @@ public class RingByteBuffer implements Comparable<RingByteBuffer> {
             ByteBuffer slice = input.slice();
             int subCount = capacity - beginWrite;
             slice.limit(subCount);
-            buff.position(beginWrite);
             buff.limit(capacity);
+            buff.position(beginWrite);
             buff.put(slice);
             input.position(input.position() + subCount);
             beginWrite = 0;
         }
-        buff.position(beginWrite);
         buff.limit(capacity);
+        buff.position(beginWrite);
         buff.put(input);
         size += count;
         return this;
@@ -427,14 +507,14 @@ public class RingByteBuffer implements Comparable<RingByteBuffer> {
             ByteBuffer slice = input.slice();
             int subCount = capacity - beginWrite;
             slice.limit(subCount);
-            buff.position(beginWrite);
             buff.limit(capacity);
+            buff.position(beginWrite);
             buff.put(slice);
             input.position(input.position() + subCount);
             beginWrite = 0;
         }
-        buff.position(beginWrite);
         buff.limit(capacity);
+        buff.position(beginWrite);
         buff.put(input);
         size += count;
         return count;
@@ -465,16 +545,16 @@ public class RingByteBuffer implements Comparable<RingByteBuffer> {
             ByteBuffer slice = dst.slice();
             int subCount = capacity - begin;
             slice.limit(subCount);
-            buff.position(begin);
             buff.limit(capacity);
+            buff.position(begin);
             slice.put(buff);
             dst.position(dst.position() + subCount);
             begin = 0;
             size -= subCount;
             count -= subCount;
         }
-        buff.position(begin);
         buff.limit(begin + count);
+        buff.position(begin);
         dst.put(buff);
         begin += count;
         size -= count;
@@ -507,16 +587,16 @@ public class RingByteBuffer implements Comparable<RingByteBuffer> {
             ByteBuffer slice = dst.slice();
             int subCount = capacity - begin;
             slice.limit(subCount);
-            buff.position(begin);
             buff.limit(capacity);
+            buff.position(begin);
             slice.put(buff);
             dst.position(dst.position() + subCount);
             begin = 0;
             size -= subCount;
             count -= subCount;
         }
-        buff.position(begin);
         buff.limit(begin + count);
+        buff.position(begin);
         dst.put(buff);
         begin += count;
         size -= count;
@@ -1,24 +1,34 @@
 package com.brimworks.nio;
 
-import java.io.Closeable;
-import java.nio.channels.SelectableChannel;
-import java.nio.channels.SelectionKey;
 import java.util.Comparator;
-import java.util.PriorityQueue;
 import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 
 public class Timer extends Watcher {
     public static Comparator<Timer> COMPARE_END_NANOS = (x, y) ->
-        Long.compareUnsigned(x.priorityQueueEndNanos, y.priorityQueueEndNanos);
+        Long.signum(x.queuedEndNanos - y.queuedEndNanos);
 
-    private long afterMillis;
-    private long repeatMillis;
-    // Only updated when remove/add from priority queue is performed:
-    private long priorityQueueEndNanos;
+    private static final long MILLIS_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private long afterNanos;
+    private long repeatNanos;
+    private long slackNanos = 0;
+    private boolean isActive = false;
+    // True if this timer is in the TimerStore:
+    private boolean isQueued = false;
     private long endNanos;
     private Callback<Timer> callback = t -> {};
 
+    // Only updated when this timer is added to the TimerStore, this may be
+    // before endNanos if again() was called (the timer is lazily re-added),
+    // or up to slackNanos after endNanos:
+    long queuedEndNanos;
+
+    // Used by TimerWheel:
+    Timer wheelNext;
+    Timer wheelPrev;
+    int wheelSlot = -1;
+
     protected Timer(EventLoop loop, int priority) {
         super(loop, priority);
     }
@@ -33,100 +43,237 @@ public class Timer extends Watcher {
     }
 
     public long afterMillis() {
-        return this.afterMillis;
+        return nanosToMillis(afterNanos);
     }
 
     public Timer afterMillis(long afterMillis) {
-        if (0 != endNanos) {
-            throw new IllegalStateException("Attempt to set afterMillis when timer is already started");
+        return afterNanos(TimeUnit.MILLISECONDS.toNanos(afterMillis));
+    }
+
+    public long afterNanos() {
+        return this.afterNanos;
+    }
+
+    /**
+     * Sub-millisecond intervals are supported: while such a timer is active,
+     * the event loop blocks in the selector for the whole milliseconds of each
+     * wait and waits out the remainder with short
+     * {@link java.util.concurrent.locks.LockSupport#parkNanos(long)} slices and
+     * a final short spin. Otherwise waits are rounded up to whole milliseconds.
+     * The {@link TimerWheel} only resolves deadlines to its tick, so use the
+     * default {@link TimerHeap} for precise timers.
+     *
+     * @param afterNanos is the time from start() until the timer fires.
+     * @return this for method chaining.
+     */
+    public Timer afterNanos(long afterNanos) {
+        if (isActive) {
+            throw new IllegalStateException("Attempt to set afterNanos when timer is already started");
         }
-        this.afterMillis = afterMillis;
+        this.afterNanos = afterNanos;
         return this;
     }
 
     public long repeatMillis() {
-        return this.repeatMillis;
+        return nanosToMillis(repeatNanos);
     }
 
     public Timer repeatMillis(long repeatMillis) {
-        if (0 != endNanos) {
-            throw new IllegalStateException("Attempt to set repeatMillis when timer is already started");
+        return repeatNanos(TimeUnit.MILLISECONDS.toNanos(repeatMillis));
+    }
+
+    public long repeatNanos() {
+        return this.repeatNanos;
+    }
+
+    /**
+     * @param repeatNanos is the interval at which the timer fires after the
+     *     first time, 0 to fire once.
+     * @return this for method chaining.
+     */
+    public Timer repeatNanos(long repeatNanos) {
+        if (isActive) {
+            throw new IllegalStateException("Attempt to set repeatNanos when timer is already started");
         }
-        this.repeatMillis = repeatMillis;
+        this.repeatNanos = repeatNanos;
         return this;
     }
 
-    public long remainingMillis() {
-        if (endNanos != 0) {
-            return nanosToMillis(endNanos - eventLoop().nanoTime());
+    public long slackMillis() {
+        return nanosToMillis(slackNanos);
+    }
+
+    /**
+     * Allow this timer to fire up to slackMillis late, so the event loop can
+     * fire timers with nearby deadlines in a single wakeup. The deadline is
+     * rounded up within the slack to the time with the most trailing zero bits
+     * (like Linux timer slack), so timers with overlapping windows tend to be
+     * rounded to the same time.
+     *
+     * @param slackMillis is the tolerance, 0 (the default) for none.
+     * @return this for method chaining.
+     */
+    public Timer slackMillis(long slackMillis) {
+        if (slackMillis < 0) {
+            throw new IllegalArgumentException("slackMillis must be non-negative, got " + slackMillis);
         }
-        return afterMillis;
+        return slackNanos(TimeUnit.MILLISECONDS.toNanos(slackMillis));
+    }
+
+    public long slackNanos() {
+        return slackNanos;
+    }
+
+    /**
+     * @param slackNanos is the tolerance, see {@link #slackMillis(long)}.
+     * @return this for method chaining.
+     */
+    public Timer slackNanos(long slackNanos) {
+        if (slackNanos < 0) {
+            throw new IllegalArgumentException("slackNanos must be non-negative, got " + slackNanos);
+        }
+        this.slackNanos = slackNanos;
+        return this;
+    }
+
+    public boolean isActive() {
+        return isActive;
     }
 
-    protected long remainingMillisPriorityQueue(long now) {
-        if (priorityQueueEndNanos != 0) {
-            return nanosToMillis(priorityQueueEndNanos - now);
+    public long remainingMillis() {
+        return nanosToMillis(remainingNanos());
+    }
+
+    public long remainingNanos() {
+        if (isActive) {
+            return endNanos - eventLoop().nanoTime();
         }
-        return afterMillis;
+        return afterNanos;
     }
 
     @Override
     public Timer start() {
-        if (0 != endNanos) {
+        if (isActive) {
             throw new IllegalStateException("Attempt to set start when timer is already started");
         }
-        endNanos = eventLoop().nanoTime() + TimeUnit.MILLISECONDS.toNanos(afterMillis);
-        priorityQueueEndNanos = endNanos;
-        eventLoop().add(this);
+        endNanos = eventLoop().nanoTime() + afterNanos;
+        active(true);
+        enqueue();
         return this;
     }
 
     @Override
     public Timer stop() {
-        eventLoop().remove(this);
-        endNanos = 0;
-        priorityQueueEndNanos = 0;
+        if (isActive) {
+            eventLoop().remove(this);
+            active(false);
+            isQueued = false;
+        }
         return this;
     }
 
     /**
      * Acts as though the timer expired now. Note that this behaves the same
-     * as calling stop() if repeatMillis is <= 0.
+     * as calling stop() if repeatNanos is <= 0, and starts the timer if it
+     * is not active.
      */
     public Timer again() {
-        if (repeatMillis <= 0) {
+        if (repeatNanos <= 0) {
             return stop();
         }
-        priorityQueueEndNanos = eventLoop().nanoTime() + TimeUnit.MILLISECONDS.toNanos(repeatMillis);
+        endNanos = eventLoop().nanoTime() + repeatNanos;
+        if (!isActive) {
+            active(true);
+            enqueue();
+        } else if (!isQueued || queuedEndNanos - (endNanos + slackNanos) > 0) {
+            // Pending, running, or must fire sooner than it is queued for:
+            eventLoop().remove(this);
+            enqueue();
+        }
+        // Otherwise the timer is re-added when the queued deadline is reached.
         return this;
     }
 
+    /**
+     * NOTE: This method is ONLY called by the EventLoop, after this timer is
+     * removed from the TimerStore.
+     *
+     * @return true if the timer expired, false if it was re-added to the
+     *     TimerStore since again() pushed the deadline out.
+     */
+    boolean expire() {
+        isQueued = false;
+        if (endNanos - queuedEndNanos > 0) {
+            enqueue();
+            return false;
+        }
+        return true;
+    }
+
     /**
      * NOTE: This method assumes it is ONLY called by the EventLoop, and thus is no longer in the
-     * priority queue of timers.
+     * TimerStore.
      */
     @Override
     public void run() throws IOException {
-        if (priorityQueueEndNanos != endNanos) {
-            // Force re-enqueue into priority queue:
-            endNanos = priorityQueueEndNanos;
-            eventLoop().add(this);
+        if (!isActive || isQueued) {
+            return;
+        }
+        EventLoopMetrics metrics = eventLoop().metrics();
+        if (null != metrics) {
+            metrics.timerLag().record(System.nanoTime() - endNanos);
+        }
+        if (repeatNanos <= 0) {
+            // Allow the callback to start() this timer again:
+            active(false);
+            callback.accept(this);
             return;
         }
         try {
             callback.accept(this);
         } finally {
-            if (repeatMillis > 0) {
-                endNanos = eventLoop().nanoTime() + TimeUnit.MILLISECONDS.toNanos(repeatMillis);
-                priorityQueueEndNanos = endNanos;
-                eventLoop().add(this);
-            } else {
-                endNanos = 0;
-                priorityQueueEndNanos = 0;
+            if (isActive && !isQueued) {
+                endNanos = eventLoop().nanoTime() + repeatNanos;
+                enqueue();
             }
         }
     }
 
+    /**
+     * NOTE: This method is ONLY called by the EventLoop, after expire().
+     *
+     * @return true if slack moved the deadline this timer was queued with.
+     */
+    boolean isSlackApplied() {
+        return queuedEndNanos != endNanos;
+    }
+
+    private void active(boolean isActive) {
+        this.isActive = isActive;
+        if (afterNanos % MILLIS_NANOS != 0 || repeatNanos % MILLIS_NANOS != 0) {
+            eventLoop().preciseTimer(isActive);
+        }
+    }
+
+    private void enqueue() {
+        queuedEndNanos = applySlack(endNanos, slackNanos);
+        isQueued = true;
+        eventLoop().add(this);
+    }
+
+    /**
+     * @return the time within [endNanos, endNanos + slackNanos] with the most
+     *     trailing zero bits.
+     */
+    static long applySlack(long endNanos, long slackNanos) {
+        if (slackNanos <= 0) {
+            return endNanos;
+        }
+        long limit = endNanos + slackNanos;
+        long mask = Long.highestOneBit(endNanos ^ limit) - 1;
+        return limit & ~mask;
+    }
+
     private static long nanosToMillis(long nanos) {
         return TimeUnit.NANOSECONDS.toMillis(nanos);
     }
@@ -0,0 +1,40 @@
+package com.brimworks.nio;
+
+import java.util.PriorityQueue;
+
+/**
+ * A {@link TimerStore} backed by a binary heap. Starting a timer is O(log n),
+ * stopping a timer is O(n). This is the default used by {@link EventLoop}.
+ */
+public class TimerHeap implements TimerStore {
+    private PriorityQueue<Timer> heap = new PriorityQueue<>(Timer.COMPARE_END_NANOS);
+
+    @Override
+    public void add(Timer timer) {
+        heap.add(timer);
+    }
+
+    @Override
+    public void remove(Timer timer) {
+        heap.remove(timer);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return heap.isEmpty();
+    }
+
+    @Override
+    public long nextExpiryNanos() {
+        return heap.peek().queuedEndNanos;
+    }
+
+    @Override
+    public Timer poll(long now) {
+        Timer timer = heap.peek();
+        if (null == timer || timer.queuedEndNanos - now > 0) {
+            return null;
+        }
+        return heap.poll();
+    }
+}
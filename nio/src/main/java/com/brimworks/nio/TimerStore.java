@@ -0,0 +1,50 @@
+package com.brimworks.nio;
+
+/**
+ * Holds the active (started) {@link Timer}s of an {@link EventLoop} ordered by
+ * the deadline they were queued with. Select an implementation when constructing
+ * the event loop, see {@link EventLoop#EventLoop(java.nio.channels.Selector, TimerStore)}.
+ *
+ * <ul>
+ * <li>{@link TimerHeap} is a binary heap: O(log n) start and O(n) stop. Best
+ *     for a small number of timers.</li>
+ * <li>{@link TimerWheel} is a hashed hierarchical timing wheel: O(1) start,
+ *     stop and again. Best for a large number of timers which are mostly
+ *     stopped before they expire (idle and request timeouts).</li>
+ * </ul>
+ *
+ * A TimerStore must only be used by a single event loop, and is only accessed
+ * from the thread running that event loop.
+ */
+public interface TimerStore {
+    /**
+     * @param timer is a timer which is not yet in this store, it will be
+     *     stored under its queued deadline.
+     */
+    void add(Timer timer);
+
+    /**
+     * @param timer is removed from this store, nothing happens if the timer
+     *     is not in this store.
+     */
+    void remove(Timer timer);
+
+    /**
+     * @return true if there are no timers in this store.
+     */
+    boolean isEmpty();
+
+    /**
+     * @return the {@link System#nanoTime()} at which {@link #poll(long)} should
+     *     next be called. This is never after the earliest deadline in this store,
+     *     but may be before it. Only valid if this store is not empty.
+     */
+    long nextExpiryNanos();
+
+    /**
+     * @param now is the current {@link System#nanoTime()}
+     * @return a timer removed from this store whose deadline is at or before now,
+     *     or null if there are no expired timers.
+     */
+    Timer poll(long now);
+}
@@ -0,0 +1,233 @@
+package com.brimworks.nio;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link TimerStore} implemented as a hashed hierarchical timing wheel (see
+ * Varghese and Lauck, "Hashed and Hierarchical Timing Wheels"). Adding, removing
+ * and expiring a timer are all O(1), which makes this a good choice when there are
+ * many timers that are usually stopped before they fire (idle and request timeouts).
+ *
+ * Time is divided into ticks of a fixed duration (1 millisecond by default). Timers
+ * never expire before their deadline, but may expire up to one tick after it.
+ *
+ * There are {@value #LEVELS} levels of {@value #SLOTS} slots each. Level 0 holds
+ * timers expiring within the next {@value #SLOTS} ticks, level 1 holds timers
+ * expiring within the next {@value #SLOTS}^2 ticks, and so on. When the current
+ * tick crosses a level boundary the corresponding slot of the next level is
+ * "cascaded" down. Timers further in the future than the top level can hold are
+ * parked in the last slot reachable and re-evaluated when that slot is cascaded.
+ */
+public class TimerWheel implements TimerStore {
+    static final int LEVELS = 4;
+    static final int BITS = 8;
+    static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int WORDS = SLOTS / Long.SIZE;
+    private static final long MAX_TICKS = (1L << (BITS * LEVELS)) - 1;
+
+    private final long tickNanos;
+    private final long origin = System.nanoTime();
+    // Intrusive doubly linked lists of timers, indexed by level * SLOTS + slot:
+    private final Timer[] heads = new Timer[LEVELS * SLOTS];
+    private final Timer[] tails = new Timer[LEVELS * SLOTS];
+    // Bitmap of non-empty slots, indexed by level * WORDS + slot / 64:
+    private final long[] occupied = new long[LEVELS * WORDS];
+    // All ticks before the current tick have been expired:
+    private long currentTick = 0;
+    private int size = 0;
+
+    /**
+     * Create a timing wheel with a tick of 1 millisecond.
+     */
+    public TimerWheel() {
+        this(1, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param tick is the resolution of this timing wheel.
+     * @param unit is the unit of tick.
+     */
+    public TimerWheel(long tick, TimeUnit unit) {
+        this.tickNanos = unit.toNanos(tick);
+        if (tickNanos <= 0) {
+            throw new IllegalArgumentException("tick must be positive, got " + tick + " " + unit);
+        }
+    }
+
+    /**
+     * @return the resolution of this timing wheel in nanoseconds.
+     */
+    public long tickNanos() {
+        return tickNanos;
+    }
+
+    /**
+     * @return the number of timers in this wheel.
+     */
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void add(Timer timer) {
+        long delta = Math.min(Math.max(ceilTick(timer.queuedEndNanos) - currentTick, 0), MAX_TICKS);
+        long expiryTick = currentTick + delta;
+        int level = 0;
+        for (; delta >= SLOTS; delta >>>= BITS) {
+            level++;
+        }
+        int slot = level * SLOTS + (int)((expiryTick >>> (BITS * level)) & MASK);
+        link(slot, timer);
+        size++;
+    }
+
+    @Override
+    public void remove(Timer timer) {
+        if (timer.wheelSlot < 0) {
+            return;
+        }
+        unlink(timer);
+        size--;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return 0 == size;
+    }
+
+    @Override
+    public long nextExpiryNanos() {
+        return origin + nextEventTick() * tickNanos;
+    }
+
+    @Override
+    public Timer poll(long now) {
+        long nowTick = Math.floorDiv(now - origin, tickNanos);
+        while (true) {
+            Timer timer = heads[(int)(currentTick & MASK)];
+            if (null != timer) {
+                if (currentTick > nowTick) {
+                    return null;
+                }
+                unlink(timer);
+                size--;
+                return timer;
+            }
+            long next = 0 == size ? Long.MAX_VALUE : nextEventTick();
+            if (next > nowTick) {
+                // Nothing to expire or cascade until after now:
+                if (nowTick > currentTick) {
+                    currentTick = nowTick;
+                }
+                return null;
+            }
+            currentTick = next;
+            cascade();
+        }
+    }
+
+    /**
+     * Re-add all timers in the slots of upper levels whose boundary is the
+     * current tick.
+     */
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            int shift = BITS * level;
+            if (0 != (currentTick & ((1L << shift) - 1))) {
+                break;
+            }
+            int slot = level * SLOTS + (int)((currentTick >>> shift) & MASK);
+            Timer timer = heads[slot];
+            heads[slot] = null;
+            tails[slot] = null;
+            occupied[slot >>> 6] &= ~(1L << slot);
+            while (null != timer) {
+                Timer next = timer.wheelNext;
+                timer.wheelNext = null;
+                timer.wheelPrev = null;
+                timer.wheelSlot = -1;
+                size--;
+                add(timer);
+                timer = next;
+            }
+        }
+    }
+
+    /**
+     * @return the earliest tick at or after the current tick which either has
+     *     timers to expire or needs to be cascaded.
+     */
+    private long nextEventTick() {
+        long result = Long.MAX_VALUE;
+        int distance = nextOccupied(0, (int)(currentTick & MASK));
+        if (distance >= 0) {
+            result = currentTick + distance;
+        }
+        for (int level = 1; level < LEVELS; level++) {
+            int shift = BITS * level;
+            long base = currentTick >>> shift;
+            distance = nextOccupied(level, (int)((base + 1) & MASK));
+            if (distance >= 0) {
+                result = Math.min(result, (base + 1 + distance) << shift);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the distance from the from slot to the next occupied slot of
+     *     the level (wrapping around), or -1 if the level is empty.
+     */
+    private int nextOccupied(int level, int from) {
+        int base = level * WORDS;
+        int word = from >>> 6;
+        long bits = occupied[base + word] & (-1L << from);
+        for (int i = 0; i <= WORDS; i++) {
+            if (0 != bits) {
+                int slot = (word << 6) + Long.numberOfTrailingZeros(bits);
+                return (slot - from) & MASK;
+            }
+            word = (word + 1) % WORDS;
+            bits = occupied[base + word];
+        }
+        return -1;
+    }
+
+    private long ceilTick(long nanos) {
+        return -Math.floorDiv(origin - nanos, tickNanos);
+    }
+
+    private void link(int slot, Timer timer) {
+        timer.wheelSlot = slot;
+        timer.wheelNext = null;
+        timer.wheelPrev = tails[slot];
+        if (null == tails[slot]) {
+            heads[slot] = timer;
+            occupied[slot >>> 6] |= 1L << slot;
+        } else {
+            tails[slot].wheelNext = timer;
+        }
+        tails[slot] = timer;
+    }
+
+    private void unlink(Timer timer) {
+        int slot = timer.wheelSlot;
+        if (null == timer.wheelPrev) {
+            heads[slot] = timer.wheelNext;
+        } else {
+            timer.wheelPrev.wheelNext = timer.wheelNext;
+        }
+        if (null == timer.wheelNext) {
+            tails[slot] = timer.wheelPrev;
+        } else {
+            timer.wheelNext.wheelPrev = timer.wheelPrev;
+        }
+        if (null == heads[slot]) {
+            occupied[slot >>> 6] &= ~(1L << slot);
+        }
+        timer.wheelNext = null;
+        timer.wheelPrev = null;
+        timer.wheelSlot = -1;
+    }
+}
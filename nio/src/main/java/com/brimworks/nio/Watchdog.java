@@ -0,0 +1,232 @@
+package com.brimworks.nio;
+
+import java.io.Closeable;
+import java.lang.invoke.VarHandle;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Detects blocked event loops: when a single {@link Watcher#run()} takes longer
+ * than the budget, the stack of the event loop thread is sampled and reported
+ * along with the offending watcher. Each slow run is reported at most once.
+ *
+ * The cost on the event loop thread is a {@link System#nanoTime()} call, a
+ * store-store fence and two ordered (non-fenced) stores per watcher run, none
+ * of which need a CPU fence on x86. All the work is done by the
+ * watchdog thread, which polls the watched loops every quarter of the budget,
+ * so a blocked loop is reported after between 1 and 1.25 times the budget.
+ *
+ * Typical usage:
+ * <pre>
+ * Watchdog watchdog = new Watchdog(100, TimeUnit.MILLISECONDS, report -&gt; log.warn(report));
+ * watchdog.watch(loop);
+ * watchdog.start();
+ * ...
+ * watchdog.close();
+ * </pre>
+ */
+public class Watchdog implements Closeable {
+    /**
+     * Describes a watcher whose run() exceeded the budget.
+     */
+    public static class Report {
+        private final EventLoop loop;
+        private final Watcher watcher;
+        private final Thread thread;
+        private final long blockedNanos;
+        private final StackTraceElement[] stackTrace;
+
+        Report(EventLoop loop, Watcher watcher, Thread thread, long blockedNanos, StackTraceElement[] stackTrace) {
+            this.loop = loop;
+            this.watcher = watcher;
+            this.thread = thread;
+            this.blockedNanos = blockedNanos;
+            this.stackTrace = stackTrace;
+        }
+
+        public EventLoop eventLoop() {
+            return loop;
+        }
+
+        /**
+         * @return the watcher which is running. Note that the watcher belongs to
+         *     the event loop thread, so only use it for identification.
+         */
+        public Watcher watcher() {
+            return watcher;
+        }
+
+        public int priority() {
+            return watcher.priority();
+        }
+
+        public Thread thread() {
+            return thread;
+        }
+
+        /**
+         * @return how long the watcher had been running when the stack was sampled.
+         */
+        public long blockedNanos() {
+            return blockedNanos;
+        }
+
+        /**
+         * @return the stack of the event loop thread, sampled while the watcher
+         *     was running.
+         */
+        public StackTraceElement[] stackTrace() {
+            return stackTrace;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(watcher.getClass().getSimpleName())
+                .append(" with priority ").append(watcher.priority())
+                .append(" blocked thread \"").append(thread.getName())
+                .append("\" for ").append(TimeUnit.NANOSECONDS.toMillis(blockedNanos)).append("ms");
+            for (StackTraceElement element : stackTrace) {
+                sb.append("\n\tat ").append(element);
+            }
+            return sb.toString();
+        }
+    }
+
+    // State of a watched loop, only accessed by the watchdog thread:
+    private static class Watched {
+        private long sequence = 0;
+        private boolean isReported = false;
+    }
+
+    private final long budgetNanos;
+    private final Consumer<Report> listener;
+    private final Map<EventLoop, Watched> loops = new ConcurrentHashMap<>();
+    private Thread thread;
+    private volatile boolean running = false;
+
+    /**
+     * @param budget is the maximum time a single watcher run should take.
+     * @param unit is the unit of budget.
+     * @param listener is called on the watchdog thread for each watcher run
+     *     which exceeds the budget.
+     */
+    public Watchdog(long budget, TimeUnit unit, Consumer<Report> listener) {
+        this.budgetNanos = unit.toNanos(budget);
+        if (budgetNanos <= 0) {
+            throw new IllegalArgumentException("budget must be positive, got " + budget + " " + unit);
+        }
+        this.listener = listener;
+    }
+
+    /**
+     * Thread-safe.
+     *
+     * @param loop is an event loop to watch.
+     * @return this for method chaining.
+     */
+    public Watchdog watch(EventLoop loop) {
+        loops.computeIfAbsent(loop, l -> {
+            l.watched(true);
+            return new Watched();
+        });
+        return this;
+    }
+
+    /**
+     * Thread-safe.
+     *
+     * @param loop is an event loop to stop watching.
+     * @return this for method chaining.
+     */
+    public Watchdog unwatch(EventLoop loop) {
+        if (null != loops.remove(loop)) {
+            loop.watched(false);
+        }
+        return this;
+    }
+
+    /**
+     * Start the watchdog thread.
+     *
+     * @return this for method chaining.
+     */
+    public synchronized Watchdog start() {
+        if (running) {
+            throw new IllegalStateException("Attempt to start a Watchdog which is already started");
+        }
+        running = true;
+        thread = new Thread(this::runWatchdog, "event-loop-watchdog");
+        thread.setDaemon(true);
+        thread.start();
+        return this;
+    }
+
+    /**
+     * Stop the watchdog thread and stop watching all event loops.
+     */
+    @Override
+    public synchronized void close() {
+        if (running) {
+            running = false;
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+        for (EventLoop loop : loops.keySet()) {
+            unwatch(loop);
+        }
+    }
+
+    private void runWatchdog() {
+        long intervalNanos = Math.max(budgetNanos / 4, TimeUnit.MILLISECONDS.toNanos(1));
+        while (running) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(intervalNanos);
+            } catch (InterruptedException ex) {
+                continue;
+            }
+            for (Map.Entry<EventLoop, Watched> entry : loops.entrySet()) {
+                check(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void check(EventLoop loop, Watched watched) {
+        long sequence = loop.runSequence();
+        if (sequence != watched.sequence) {
+            watched.sequence = sequence;
+            watched.isReported = false;
+        }
+        // Even sequence means no watcher is running:
+        if (0 == (sequence & 1) || watched.isReported) {
+            return;
+        }
+        // Measured from when the run started, not when it was first seen:
+        long startNanos = loop.runStartNanos();
+        if (System.nanoTime() - startNanos < budgetNanos) {
+            return;
+        }
+        Watcher watcher = loop.runningWatcher();
+        Thread thread = loop.thread();
+        if (null == watcher || null == thread) {
+            return;
+        }
+        StackTraceElement[] stackTrace = thread.getStackTrace();
+        // Make sure the same run is still in progress, so the watcher and start
+        // time belong to it (the seqlock read must not be reordered after the
+        // plain reads of the fields):
+        VarHandle.loadLoadFence();
+        if (sequence != loop.runSequence()) {
+            return;
+        }
+        watched.isReported = true;
+        listener.accept(new Report(loop, watcher, thread, System.nanoTime() - startNanos, stackTrace));
+    }
+}
@@ -7,10 +7,41 @@ import java.io.IOException;
  * block!
  */
 public abstract class Watcher implements Comparable<Watcher> {
+    /**
+     * Lowest priority a watcher may have, pending watchers with a higher
+     * priority are always ran first.
+     */
+    public static final int MIN_PRIORITY = -32;
+
+    /**
+     * Highest priority a watcher may have.
+     */
+    public static final int MAX_PRIORITY = 31;
+
     private EventLoop loop;
     private int priority;
 
+    // Used by PendingQueue:
+    Watcher pendingNext;
+    Watcher pendingPrev;
+    boolean isPending = false;
+
+    // Used by WatcherList:
+    int listIndex = -1;
+
+    // Used by EventLoop.requeue():
+    long requeueIteration = -1;
+    int requeues = 0;
+
+    /**
+     * @param loop is the event loop this watcher belongs to.
+     * @param priority is between {@link #MIN_PRIORITY} and {@link #MAX_PRIORITY} (inclusive).
+     */
     protected Watcher(EventLoop loop, int priority) {
+        if (priority < MIN_PRIORITY || priority > MAX_PRIORITY) {
+            throw new IllegalArgumentException(
+                "priority must be between " + MIN_PRIORITY + " and " + MAX_PRIORITY + ", got " + priority);
+        }
         this.loop = loop;
         this.priority = priority;
     }
@@ -0,0 +1,59 @@
+package com.brimworks.nio;
+
+/**
+ * Unordered list of active watchers of a single type, with O(1) add and
+ * remove. Removal swaps the last watcher into the removed watcher's slot, so
+ * each watcher remembers its index in the list.
+ */
+class WatcherList {
+    private Watcher[] watchers = new Watcher[4];
+    private int size = 0;
+
+    /**
+     * @param watcher is added, nothing happens if it is already in a list.
+     */
+    void add(Watcher watcher) {
+        if (watcher.listIndex >= 0) {
+            return;
+        }
+        if (size == watchers.length) {
+            Watcher[] grown = new Watcher[2 * size];
+            System.arraycopy(watchers, 0, grown, 0, size);
+            watchers = grown;
+        }
+        watcher.listIndex = size;
+        watchers[size++] = watcher;
+    }
+
+    /**
+     * @param watcher is removed, nothing happens if it is not in a list.
+     */
+    void remove(Watcher watcher) {
+        int index = watcher.listIndex;
+        if (index < 0) {
+            return;
+        }
+        Watcher last = watchers[--size];
+        watchers[index] = last;
+        last.listIndex = index;
+        watchers[size] = null;
+        watcher.listIndex = -1;
+    }
+
+    /**
+     * @param pending is where all watchers in this list are added.
+     */
+    void addAllTo(PendingQueue pending) {
+        for (int i = 0; i < size; i++) {
+            pending.add(watchers[i]);
+        }
+    }
+
+    boolean isEmpty() {
+        return 0 == size;
+    }
+
+    int size() {
+        return size;
+    }
+}
@@ -0,0 +1,297 @@
+package com.brimworks.nio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.util.Arrays;
+
+/**
+ * Queue of outbound byte segments which are flushed with a single
+ * {@link GatheringByteChannel#write(ByteBuffer[], int, int)} call (of up to
+ * {@link #IOV_MAX} buffers), rather than one write per segment.
+ *
+ * Segments are either {@link ByteBuffer}s, which are queued without copying
+ * (so must not be modified until written), or a count of bytes at the front
+ * of a {@link RingByteBuffer}, which are removed from the ring as they are
+ * written, or a region of a file, which is sent with
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+ * (sendfile on Linux) so its bytes are never copied into the JVM. Fully
+ * written segments are released, a partially written segment stays at the
+ * head of the queue.
+ *
+ * Not thread safe, use from the event loop thread.
+ */
+public class WriteQueue {
+    /**
+     * Maximum buffers passed to a single gathering write, which matches the
+     * Linux IOV_MAX (the JDK splits larger arrays into several syscalls).
+     */
+    public static final int IOV_MAX = 1024;
+
+    /**
+     * Segment of bytes of a file.
+     */
+    private static class FileRegion {
+        private final FileChannel file;
+        private long position;
+        private long remaining;
+
+        private FileRegion(FileChannel file, long position, long count) {
+            this.file = file;
+            this.position = position;
+            this.remaining = count;
+        }
+
+        private long transferTo(GatheringByteChannel channel) throws IOException {
+            long count = file.transferTo(position, remaining, channel);
+            if (0 == count && position >= file.size()) {
+                throw new EOFException("file region ends " + remaining + " bytes after the end of the file");
+            }
+            position += count;
+            remaining -= count;
+            return count;
+        }
+    }
+
+    private final ByteBuffer[] iov = new ByteBuffer[IOV_MAX];
+    // Circular array of ByteBuffer, RingByteBuffer or FileRegion segments:
+    private Object[] segments;
+    // Bytes remaining of RingByteBuffer segments, parallel to segments:
+    private int[] counts;
+    private int head = 0;
+    private int segmentCount = 0;
+    private long size = 0;
+
+    public WriteQueue() {
+        this(16);
+    }
+
+    /**
+     * @param initialSegments is the initial segment capacity, which grows as
+     *     needed.
+     */
+    public WriteQueue(int initialSegments) {
+        if (initialSegments <= 0) {
+            throw new IllegalArgumentException("initialSegments must be positive, got " + initialSegments);
+        }
+        this.segments = new Object[initialSegments];
+        this.counts = new int[initialSegments];
+    }
+
+    /**
+     * @return the number of bytes queued but not yet written.
+     */
+    public long size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return 0 == size;
+    }
+
+    /**
+     * @return the number of segments queued, including a partially written
+     *     head segment.
+     */
+    public int segments() {
+        return segmentCount;
+    }
+
+    /**
+     * Queue the remaining bytes of a buffer, without copying. The buffer's
+     * position advances as it is written.
+     *
+     * @param src is the buffer to write, it must not be modified until written.
+     * @return this for method chaining.
+     */
+    public WriteQueue add(ByteBuffer src) {
+        if (src.hasRemaining()) {
+            push(src, 0);
+            size += src.remaining();
+        }
+        return this;
+    }
+
+    /**
+     * Queue the bytes currently in a ring buffer, which are removed from the
+     * ring as they are written. Bytes put into the ring afterwards are not
+     * written unless the ring is added again, which costs O(1). A ring may
+     * only be queued by one WriteQueue at a time.
+     *
+     * @param src is the ring buffer to write.
+     * @return this for method chaining.
+     */
+    public WriteQueue add(RingByteBuffer src) {
+        int count = src.size() - src.queued();
+        if (count <= 0) {
+            return this;
+        }
+        src.queued(src.size());
+        int tail = (head + segmentCount - 1) % segments.length;
+        if (segmentCount > 0 && segments[tail] == src) {
+            counts[tail] += count;
+        } else {
+            push(src, count);
+        }
+        size += count;
+        return this;
+    }
+
+    /**
+     * Queue a region of a file, which is sent without copying it into the JVM.
+     * The file's position is not used or changed.
+     *
+     * @param file is the file to send, it must not be truncated (or closed)
+     *     until written.
+     * @param position is the offset in the file of the first byte to send.
+     * @param count is the number of bytes to send.
+     * @return this for method chaining.
+     */
+    public WriteQueue add(FileChannel file, long position, long count) {
+        if (position < 0 || count < 0) {
+            throw new IllegalArgumentException("position and count must be non-negative, got " +
+                position + " and " + count);
+        }
+        if (count > 0) {
+            push(new FileRegion(file, position, count), 0);
+            size += count;
+        }
+        return this;
+    }
+
+    /**
+     * Write as many queued bytes as the channel accepts, gathering up to
+     * {@link #IOV_MAX} segments per write.
+     *
+     * @param channel is the channel to write to.
+     * @return the number of bytes written.
+     */
+    public long flush(GatheringByteChannel channel) throws IOException {
+        long total = 0;
+        while (segmentCount > 0) {
+            if (segments[head] instanceof FileRegion) {
+                FileRegion region = (FileRegion) segments[head];
+                long requested = region.remaining;
+                long count = region.transferTo(channel);
+                size -= count;
+                total += count;
+                if (count < requested) {
+                    break;
+                }
+                segments[head] = null;
+                pop();
+                continue;
+            }
+            int length = 0;
+            int gathered = 0;
+            long requested = 0;
+            for (; gathered < segmentCount && length < IOV_MAX - 1; gathered++) {
+                int index = (head + gathered) % segments.length;
+                Object segment = segments[index];
+                if (segment instanceof ByteBuffer) {
+                    ByteBuffer buffer = (ByteBuffer) segment;
+                    requested += buffer.remaining();
+                    iov[length++] = buffer;
+                } else if (segment instanceof FileRegion) {
+                    // Sent by the next iteration, once the buffers before it are written:
+                    break;
+                } else {
+                    RingByteBuffer ring = (RingByteBuffer) segment;
+                    if (ring.isGathered()) {
+                        // The same ring is queued twice, its earlier bytes go first:
+                        break;
+                    }
+                    requested += counts[index];
+                    length = ring.gather(iov, length, counts[index]);
+                }
+            }
+            long count = 0;
+            try {
+                count = channel.write(iov, 0, length);
+            } finally {
+                Arrays.fill(iov, 0, length, null);
+                release(gathered);
+            }
+            size -= count;
+            total += count;
+            if (count < requested) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Discard all queued segments.
+     */
+    public void clear() {
+        for (int i = 0; i < segmentCount; i++) {
+            Object segment = segments[(head + i) % segments.length];
+            if (segment instanceof RingByteBuffer) {
+                ((RingByteBuffer) segment).queued(0);
+            }
+        }
+        Arrays.fill(segments, null);
+        head = 0;
+        segmentCount = 0;
+        size = 0;
+    }
+
+    /**
+     * Account for the bytes written from the first gathered segments by the
+     * last gathering write, releasing fully written segments.
+     */
+    private void release(int gathered) {
+        boolean isHead = true;
+        for (int i = 0; i < gathered; i++) {
+            int index = (head + i) % segments.length;
+            Object segment = segments[index];
+            boolean isDone;
+            if (segment instanceof ByteBuffer) {
+                isDone = !((ByteBuffer) segment).hasRemaining();
+            } else {
+                RingByteBuffer ring = (RingByteBuffer) segment;
+                int written = ring.ungather();
+                ring.queued(ring.queued() - written);
+                counts[index] -= written;
+                isDone = 0 == counts[index];
+            }
+            isHead = isHead && isDone;
+            if (isHead) {
+                segments[index] = null;
+            }
+        }
+        pop();
+    }
+
+    /**
+     * Pop the released segments at the head.
+     */
+    private void pop() {
+        while (segmentCount > 0 && null == segments[head]) {
+            head = (head + 1) % segments.length;
+            segmentCount--;
+        }
+    }
+
+    private void push(Object segment, int count) {
+        if (segmentCount == segments.length) {
+            Object[] newSegments = new Object[segments.length * 2];
+            int[] newCounts = new int[segments.length * 2];
+            for (int i = 0; i < segmentCount; i++) {
+                int index = (head + i) % segments.length;
+                newSegments[i] = segments[index];
+                newCounts[i] = counts[index];
+            }
+            segments = newSegments;
+            counts = newCounts;
+            head = 0;
+        }
+        int tail = (head + segmentCount) % segments.length;
+        segments[tail] = segment;
+        counts[tail] = count;
+        segmentCount++;
+    }
+}
@@ -0,0 +1,177 @@
+package com.brimworks.nio;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import com.sun.management.UnixOperatingSystemMXBean;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AcceptorTest {
+    private static final int CLIENTS = 50;
+
+    @Test
+    public void testHandOff() throws Exception {
+        try (EventLoopGroup group = new EventLoopGroup(2)) {
+            Set<Thread> threads = ConcurrentHashMap.newKeySet();
+            Acceptor acceptor = new Acceptor(group, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+                .reusePort(false)
+                .maxAcceptsPerWakeup(4);
+            assertFalse(acceptor.reusePort());
+            connectAll(group, acceptor, threads);
+            // Round robin hands off to both event loops:
+            assertEquals(2, threads.size());
+        }
+    }
+
+    @Test
+    public void testReusePort() throws Exception {
+        Assumptions.assumeTrue(Acceptor.isReusePortSupported());
+        try (EventLoopGroup group = new EventLoopGroup(2)) {
+            Set<Thread> threads = ConcurrentHashMap.newKeySet();
+            Acceptor acceptor = new Acceptor(group, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+                .reusePort(true);
+            connectAll(group, acceptor, threads);
+            assertTrue(threads.size() >= 1);
+        }
+    }
+
+    @Test
+    public void testHandlerError() throws Exception {
+        try (EventLoopGroup group = new EventLoopGroup(2)) {
+            List<IOException> errors = new CopyOnWriteArrayList<>();
+            CountDownLatch latch = new CountDownLatch(1);
+            Acceptor acceptor = new Acceptor(group, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+                .reusePort(false)
+                .handler((loop, channel) -> {
+                    throw new IOException("handler failed");
+                })
+                .onError(ex -> {
+                    errors.add(ex);
+                    latch.countDown();
+                })
+                .start();
+            group.start();
+            try (SocketChannel client = SocketChannel.open(acceptor.localAddress())) {
+                assertTrue(latch.await(10, TimeUnit.SECONDS));
+                assertEquals("handler failed", errors.get(0).getMessage());
+                // The accepted channel was closed, and the loops keep running:
+                assertEquals(-1, client.read(ByteBuffer.allocate(1)));
+                assertTrue(group.isRunning());
+            } finally {
+                acceptor.close();
+            }
+        }
+    }
+
+    @Test
+    public void testAcceptErrorBackoff() throws Exception {
+        // Runs out of file descriptors, so only where the limit is small:
+        long maxFds = ((UnixOperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+            .getMaxFileDescriptorCount();
+        Assumptions.assumeTrue(maxFds <= 100_000, "max fds " + maxFds);
+        try (EventLoopGroup group = new EventLoopGroup(1)) {
+            List<IOException> errors = new CopyOnWriteArrayList<>();
+            List<Long> errorNanos = new CopyOnWriteArrayList<>();
+            List<Long> acceptedNanos = new CopyOnWriteArrayList<>();
+            CountDownLatch failed = new CountDownLatch(1);
+            CountDownLatch accepted = new CountDownLatch(1);
+            List<FileChannel> held = new ArrayList<>();
+            Acceptor acceptor = new Acceptor(group, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+                .reusePort(false)
+                .acceptBackoffMillis(50)
+                .handler((loop, channel) -> {
+                    acceptedNanos.add(System.nanoTime());
+                    channel.close();
+                    accepted.countDown();
+                })
+                .onError(ex -> {
+                    errorNanos.add(System.nanoTime());
+                    errors.add(ex);
+                    failed.countDown();
+                })
+                .start();
+            group.start();
+            SocketChannel client = null;
+            try {
+                // Use every file descriptor but one, for the client:
+                try {
+                    while (true) {
+                        held.add(FileChannel.open(Paths.get("/dev/null")));
+                    }
+                } catch (IOException ex) {
+                    held.remove(held.size() - 1).close();
+                }
+                // Queued by the kernel, so accept() fails with EMFILE:
+                client = SocketChannel.open(acceptor.localAddress());
+                assertTrue(failed.await(10, TimeUnit.SECONDS));
+            } finally {
+                for (FileChannel channel : held) {
+                    channel.close();
+                }
+            }
+            try {
+                // The watcher is restarted by the backoff timer, and accepts:
+                assertTrue(accepted.await(10, TimeUnit.SECONDS));
+                // Reported once, rather than spinning on the error:
+                assertEquals(1, errors.size());
+                // Not before the backoff, though the error was gone sooner:
+                assertThat(acceptedNanos.get(0) - errorNanos.get(0),
+                    greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50)));
+                assertTrue(group.isRunning());
+            } finally {
+                client.close();
+                acceptor.close();
+            }
+        }
+    }
+
+    /**
+     * Connect CLIENTS clients before the group is started, so the backlog is
+     * drained by a few accept wakeups.
+     */
+    private static void connectAll(EventLoopGroup group, Acceptor acceptor, Set<Thread> threads) throws Exception {
+        CountDownLatch latch = new CountDownLatch(CLIENTS);
+        acceptor.backlog(CLIENTS)
+            .handler((loop, channel) -> {
+                assertEquals(loop.thread(), Thread.currentThread());
+                assertFalse(channel.isBlocking());
+                threads.add(Thread.currentThread());
+                channel.close();
+                latch.countDown();
+            })
+            .start();
+        assertThrows(IllegalStateException.class, () -> acceptor.backlog(1));
+        List<SocketChannel> clients = new ArrayList<>();
+        try {
+            for (int i = 0; i < CLIENTS; i++) {
+                clients.add(SocketChannel.open(acceptor.localAddress()));
+            }
+            group.start();
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } finally {
+            acceptor.close();
+            for (SocketChannel client : clients) {
+                client.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.brimworks.nio;
+
+import org.junit.jupiter.api.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Flow;
+import static com.brimworks.nio.TestSockets.socketPair;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConnectionFlowTest {
+    private static final int READ = IOWatcher.Operation.READ.getCode();
+
+    @Test
+    public void testEcho() throws Exception {
+        SocketChannel[] pair = socketPair(4096);
+        EventLoop loop = new EventLoop();
+        byte[] data = new byte[1024 * 1024];
+        new Random(1).nextBytes(data);
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+        // Echo the server's read side into its write side:
+        Connection server = loop.connection(1, pair[1], 4096, 8192).start();
+        new ConnectionPublisher(server)
+            .subscribe(new ConnectionSubscriber(server));
+
+        loop.connection(1, pair[0], 4096, 8192)
+            .onRead(c -> {
+                RingByteBuffer inbound = c.inbound();
+                ByteBuffer bytes = ByteBuffer.allocate(inbound.size());
+                inbound.getAll(bytes);
+                received.write(bytes.array());
+            })
+            .onDrained(c -> pair[0].shutdownOutput())
+            .start()
+            .write(ByteBuffer.wrap(data));
+        loop.run();
+        assertArrayEquals(data, received.toByteArray());
+        // Closed once the publisher completed and the echo was written:
+        assertFalse(pair[1].isOpen());
+        assertFalse(pair[0].isOpen());
+        loop.close();
+    }
+
+    @Test
+    public void testDemand() throws Exception {
+        SocketChannel[] pair = socketPair(0);
+        EventLoop loop = new EventLoop();
+        Connection connection = loop.connection(1, pair[0], 16, 16).start();
+        ConnectionPublisher publisher = new ConnectionPublisher(connection);
+        assertEquals(0, connection.watcher().interestOps() & READ);
+        List<String> items = new ArrayList<>();
+        boolean[] isComplete = new boolean[1];
+        Flow.Subscription[] subscription = new Flow.Subscription[1];
+        publisher.subscribe(new Flow.Subscriber<ByteBuffer>() {
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription[0] = s;
+                s.request(1);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                items.add(new String(item.array(), item.position(), item.remaining()));
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                throw new AssertionError(error);
+            }
+
+            @Override
+            public void onComplete() {
+                isComplete[0] = true;
+                try {
+                    connection.close();
+                } catch (IOException ex) {
+                    throw new AssertionError(ex);
+                }
+            }
+        });
+        pair[1].write(ByteBuffer.wrap("hello".getBytes()));
+        loop.timer(1)
+            .callback(t -> {
+                // No demand after the first item, so not reading:
+                assertEquals(List.of("hello"), items);
+                assertEquals(0, connection.watcher().interestOps() & READ);
+                pair[1].write(ByteBuffer.wrap("world".getBytes()));
+                pair[1].close();
+                subscription[0].request(Long.MAX_VALUE);
+            })
+            .afterMillis(20)
+            .start();
+        loop.run();
+        assertEquals(List.of("hello", "world"), items);
+        assertTrue(isComplete[0]);
+        loop.close();
+    }
+
+    @Test
+    public void testWriteError() throws Exception {
+        SocketChannel[] pair = socketPair(0);
+        EventLoop loop = new EventLoop();
+        List<IOException> errors = new ArrayList<>();
+        boolean[] isCancelled = new boolean[1];
+        Connection connection = loop.connection(1, pair[0], 1024, 1024)
+            .onError(c -> {
+                errors.add(c.error());
+                throw new IOException("onError failed");
+            })
+            .start();
+        pair[1].setOption(StandardSocketOptions.SO_LINGER, 0);
+        pair[1].close();
+        Timer timeout = loop.timer(0)
+            .callback(t -> loop.breakAll())
+            .afterMillis(5000)
+            .start();
+        ConnectionSubscriber subscriber = new ConnectionSubscriber(connection);
+        // Writes an item per request until the reset connection fails a write:
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (!isCancelled[0]) {
+                    subscriber.onNext(ByteBuffer.allocate(1024));
+                }
+            }
+
+            @Override
+            public void cancel() {
+                isCancelled[0] = true;
+                timeout.stop();
+            }
+        });
+        // The error is reported rather than thrown out of the event loop:
+        loop.run();
+        assertTrue(isCancelled[0]);
+        assertEquals(1, errors.size());
+        assertEquals(errors.get(0), connection.error());
+        assertEquals("onError failed", connection.error().getSuppressed()[0].getMessage());
+        assertFalse(pair[0].isOpen());
+        loop.close();
+    }
+}
@@ -0,0 +1,367 @@
+package com.brimworks.nio;
+
+import org.junit.jupiter.api.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import static com.brimworks.nio.TestSockets.drain;
+import static com.brimworks.nio.TestSockets.socketPair;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConnectionTest {
+    private static final int READ = IOWatcher.Operation.READ.getCode();
+    private static final int WRITE = IOWatcher.Operation.WRITE.getCode();
+
+    @Test
+    public void testEcho() throws Exception {
+        SocketChannel[] pair = socketPair(4096);
+        EventLoop loop = new EventLoop();
+        byte[] data = new byte[4 * 1024 * 1024];
+        new Random(1).nextBytes(data);
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        AtomicLong maxPending = new AtomicLong();
+
+        Connection server = loop.connection(1, pair[1], 4096, 8192);
+        Callback<Connection> echo = c -> {
+            // Leave inbound bytes unconsumed while the peer is slow:
+            if (c.isWritable()) {
+                c.write(drain(c.inbound()));
+                maxPending.accumulateAndGet(c.pendingOutbound(), Math::max);
+            }
+        };
+        server.onRead(echo)
+            .onWritable(echo)
+            .start();
+        Connection client = loop.connection(1, pair[0], 4096, 8192);
+        client.onRead(c -> {
+                received.write(drain(c.inbound()).array());
+                if (received.size() == data.length) {
+                    c.close();
+                    server.close();
+                }
+            })
+            .start();
+        client.write(ByteBuffer.wrap(data));
+        assertFalse(client.isWritable());
+        assertEquals(READ | WRITE, client.watcher().interestOps());
+        loop.run();
+        assertArrayEquals(data, received.toByteArray());
+        assertEquals(0, client.pendingOutbound());
+        // Bounded by the write high watermark plus one inbound buffer:
+        assertTrue(maxPending.get() <= 8192 + 4096, "max pending " + maxPending.get());
+    }
+
+    @Test
+    public void testReadWatermarks() throws Exception {
+        SocketChannel[] pair = socketPair(0);
+        EventLoop loop = new EventLoop();
+        int total = 4096;
+        AtomicInteger consumed = new AtomicInteger();
+        Connection connection = loop.connection(1, pair[0], 1024, 1024)
+            .readWatermarks(256, 1024);
+        // Consume slowly, so reading is paused:
+        Timer consumer = loop.timer(1)
+            .callback(t -> {
+                RingByteBuffer inbound = connection.inbound();
+                int count = Math.min(inbound.size(), 900);
+                inbound.getAll(ByteBuffer.allocate(count));
+                if (consumed.addAndGet(count) == total) {
+                    t.stop();
+                    connection.close();
+                } else {
+                    connection.updateInterestOps();
+                }
+            })
+            .afterMillis(5)
+            .repeatMillis(5);
+        connection.onRead(c -> {
+                if (c.isReadPaused()) {
+                    assertEquals(0, c.watcher().interestOps() & READ);
+                }
+            })
+            .start();
+        consumer.start();
+        pair[1].write(ByteBuffer.allocate(total));
+        loop.run();
+        assertEquals(total, consumed.get());
+        pair[1].close();
+    }
+
+    @Test
+    public void testWriteWatermarks() throws Exception {
+        SocketChannel[] pair = socketPair(4096);
+        SocketChannel peer = pair[1];
+        EventLoop loop = new EventLoop();
+        int total = 1024 * 1024;
+        AtomicInteger writable = new AtomicInteger();
+        AtomicLong peerRead = new AtomicLong();
+        Connection connection = loop.connection(1, pair[0], 1024, 1024)
+            .writeWatermarks(4096, 64 * 1024)
+            .onWritable(c -> {
+                writable.incrementAndGet();
+                assertTrue(c.pendingOutbound() <= 4096);
+            })
+            .onRead(c -> {
+                drain(c.inbound());
+                c.close();
+            })
+            .start();
+        assertEquals(READ, connection.watcher().interestOps());
+        connection.write(ByteBuffer.allocate(total));
+        assertFalse(connection.isWritable());
+        assertEquals(READ | WRITE, connection.watcher().interestOps());
+
+        Thread reader = new Thread(() -> {
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate(8192);
+                while (peerRead.get() < total) {
+                    buffer.clear();
+                    peerRead.addAndGet(peer.read(buffer));
+                }
+                peer.write(ByteBuffer.wrap(new byte[] { 1 }));
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        reader.start();
+        loop.run();
+        reader.join();
+        peer.close();
+        assertEquals(total, peerRead.get());
+        assertEquals(1, writable.get());
+        assertTrue(connection.isWritable());
+        assertEquals(0, connection.pendingOutbound());
+        // WRITE interest was dropped once drained:
+        assertEquals(0, connection.watcher().interestOps() & WRITE);
+    }
+
+    @Test
+    public void testReadBudget() throws Exception {
+        EventLoop loop = new EventLoop();
+        List<String> reads = new ArrayList<>();
+        List<SocketChannel> peers = new ArrayList<>();
+        for (String name : new String[] { "a", "b" }) {
+            SocketChannel[] pair = socketPair(0);
+            peers.add(pair[1]);
+            loop.connection(1, pair[0], 1024, 1024)
+                .readBudget(1)
+                .onRead(c -> {
+                    reads.add(name);
+                    drain(c.inbound());
+                    if (reads.size() == 8) {
+                        loop.breakAll();
+                    }
+                })
+                .start();
+            pair[1].write(ByteBuffer.allocate(64 * 1024));
+        }
+        loop.run();
+        // Each run reads once then requeues, so the connections take turns:
+        for (int i = 1; i < reads.size(); i++) {
+            assertFalse(reads.get(i - 1).equals(reads.get(i)), "reads " + reads);
+        }
+        for (SocketChannel peer : peers) {
+            peer.close();
+        }
+    }
+
+    @Test
+    public void testWriteFile() throws Exception {
+        SocketChannel[] pair = socketPair(4096);
+        SocketChannel peer = pair[1];
+        EventLoop loop = new EventLoop();
+        byte[] data = new byte[1024 * 1024];
+        new Random(2).nextBytes(data);
+        Path path = Files.createTempFile("connection", ".bin");
+        Files.write(path, data);
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        try (FileChannel file = FileChannel.open(path)) {
+            Connection connection = loop.connection(1, pair[0], 1024, 1024)
+                .onDrained(Connection::close)
+                .start()
+                .write(ByteBuffer.wrap("<".getBytes()))
+                .write(file, 1, data.length - 2)
+                .write(ByteBuffer.wrap(">".getBytes()));
+            assertFalse(connection.isWritable());
+            Thread reader = new Thread(() -> {
+                try {
+                    ByteBuffer buffer = ByteBuffer.allocate(8192);
+                    while (peer.read(buffer) >= 0) {
+                        received.write(buffer.array(), 0, buffer.position());
+                        buffer.clear();
+                    }
+                } catch (Exception ex) {
+                    throw new RuntimeException(ex);
+                }
+            });
+            reader.start();
+            loop.run();
+            reader.join();
+        } finally {
+            peer.close();
+            loop.close();
+            Files.delete(path);
+        }
+        byte[] expected = data.clone();
+        expected[0] = '<';
+        expected[data.length - 1] = '>';
+        assertArrayEquals(expected, received.toByteArray());
+    }
+
+    @Test
+    public void testWriteCoalescing() throws Exception {
+        SocketChannel[] pair = socketPair(0);
+        SocketChannel peer = pair[1];
+        EventLoop loop = new EventLoop();
+        AtomicLong pending = new AtomicLong();
+        Connection connection = loop.connection(1, pair[0], 1024, 1024)
+            .writeCoalescing(true)
+            .onRead(c -> {
+                drain(c.inbound());
+                for (int i = 0; i < 8; i++) {
+                    c.write(ByteBuffer.wrap(("pong " + i + "\n").getBytes()));
+                }
+                // Nothing is written until the loop is about to poll:
+                pending.set(c.pendingOutbound());
+                assertEquals(READ, c.watcher().interestOps());
+            })
+            .onDrained(Connection::close)
+            .start();
+        assertTrue(connection.isWriteCoalescing());
+        peer.write(ByteBuffer.wrap("ping".getBytes()));
+        loop.run();
+        assertEquals(8 * 7, pending.get());
+        assertFalse(pair[0].isOpen());
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        while (peer.read(buffer) >= 0) {
+            received.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+        assertTrue(received.toString().startsWith("pong 0\npong 1\n"), received.toString());
+        assertEquals(8 * 7, received.size());
+        peer.close();
+        loop.close();
+    }
+
+    @Test
+    public void testWriteCoalescingFromPrepare() throws Exception {
+        SocketChannel[] pair = socketPair(0);
+        SocketChannel peer = pair[1];
+        EventLoop loop = new EventLoop();
+        AtomicInteger drained = new AtomicInteger();
+        // Unflushed bytes would leave the loop blocked in select:
+        Timer timeout = loop.timer(0)
+            .callback(t -> loop.breakAll())
+            .afterMillis(5000)
+            .start();
+        Connection connection = loop.connection(1, pair[0], 1024, 1024)
+            .writeCoalescing(true)
+            .onDrained(c -> {
+                if (drained.incrementAndGet() == 2) {
+                    timeout.stop();
+                    c.close();
+                }
+            })
+            .start();
+        // Writes after this iteration's prepare pass, from a prepare watcher
+        // and from a task ran before polling, must not wait for I/O:
+        loop.prepareWatcher(0)
+            .callback(w -> {
+                w.stop();
+                connection.write(ByteBuffer.wrap("a".getBytes()));
+                loop.execute(() -> {
+                    try {
+                        connection.write(ByteBuffer.wrap("b".getBytes()));
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+            })
+            .start();
+        loop.run();
+        assertFalse(pair[0].isOpen());
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        while (peer.read(buffer) >= 0) {
+            // Read until EOF.
+        }
+        assertEquals("ab", new String(buffer.array(), 0, buffer.position()));
+        peer.close();
+        loop.close();
+    }
+
+    @Test
+    public void testReset() throws Exception {
+        EventLoop loop = new EventLoop();
+        List<IOException> errors = new ArrayList<>();
+        // Read path:
+        SocketChannel[] pair = socketPair(0);
+        Connection reader = loop.connection(1, pair[0], 1024, 1024)
+            .onError(c -> errors.add(c.error()))
+            .start();
+        reset(pair[1]);
+        loop.run();
+        assertEquals(1, errors.size());
+        assertSame(errors.get(0), reader.error());
+        assertFalse(pair[0].isOpen());
+
+        // Eager write path:
+        pair = socketPair(0);
+        Connection writer = loop.connection(1, pair[0], 1024, 1024)
+            .onError(c -> errors.add(c.error()))
+            .start();
+        reset(pair[1]);
+        while (null == writer.error()) {
+            writer.write(ByteBuffer.allocate(1024));
+        }
+        assertEquals(2, errors.size());
+        assertFalse(pair[0].isOpen());
+        assertEquals(0, writer.pendingOutbound());
+        loop.close();
+    }
+
+    /**
+     * Close the socket so the peer's connection is reset.
+     */
+    private static void reset(SocketChannel channel) throws Exception {
+        channel.setOption(StandardSocketOptions.SO_LINGER, 0);
+        channel.close();
+    }
+
+    @Test
+    public void testEof() throws Exception {
+        SocketChannel[] pair = socketPair(0);
+        EventLoop loop = new EventLoop();
+        AtomicInteger eof = new AtomicInteger();
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        Connection connection = loop.connection(1, pair[0], 16, 16)
+            .onRead(c -> received.write(drain(c.inbound()).array()))
+            .onEof(c -> {
+                eof.incrementAndGet();
+                assertTrue(c.isEof());
+                c.close();
+            })
+            .start();
+        pair[1].write(ByteBuffer.wrap("hello".getBytes()));
+        pair[1].close();
+        loop.run();
+        assertEquals("hello", received.toString());
+        assertEquals(1, eof.get());
+        assertFalse(pair[0].isOpen());
+    }
+}
@@ -0,0 +1,172 @@
+package com.brimworks.nio;
+
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DatagramWatcherTest {
+    @Test
+    public void testBatchedEcho() throws Exception {
+        int count = 10;
+        List<Integer> batches = new ArrayList<>();
+        List<Integer> echoed = new ArrayList<>();
+        try (EventLoop loop = new EventLoop();
+            DatagramChannel server = DatagramChannel.open();
+            DatagramChannel client = DatagramChannel.open())
+        {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            client.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            client.connect(server.getLocalAddress());
+            // Queue all the datagrams before the server is polled:
+            for (int i = 0; i < count; i++) {
+                client.write(ByteBuffer.wrap(new byte[] { (byte) i }));
+            }
+            DatagramWatcher serverWatcher = loop.datagramWatcher(0, server, 4, 64)
+                .onReceive(w -> {
+                    batches.add(w.received());
+                    for (int i = 0; i < w.received(); i++) {
+                        ByteBuffer datagram = w.datagram(i);
+                        ByteBuffer copy = ByteBuffer.allocate(datagram.remaining()).put(datagram).flip();
+                        w.send(copy, w.source(i));
+                    }
+                    assertThrows(IndexOutOfBoundsException.class, () -> w.datagram(w.received()));
+                })
+                .start();
+            loop.datagramWatcher(0, client, 16, 64)
+                .onReceive(w -> {
+                    for (int i = 0; i < w.received(); i++) {
+                        echoed.add((int) w.datagram(i).get());
+                    }
+                    if (echoed.size() == count) {
+                        w.stop();
+                        serverWatcher.stop();
+                    }
+                })
+                .start();
+            loop.run();
+        }
+        assertEquals(count, batches.stream().mapToInt(Integer::intValue).sum());
+        // Each readiness event drained a batch of up to 4:
+        assertTrue(batches.size() < count, "batches " + batches);
+        assertTrue(batches.stream().allMatch(size -> size <= 4), "batches " + batches);
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, echoed.get(i));
+        }
+    }
+
+    @Test
+    public void testQueuedSend() throws Exception {
+        List<Integer> interestOps = new ArrayList<>();
+        try (EventLoop loop = new EventLoop();
+            DatagramChannel sender = DatagramChannel.open();
+            DatagramChannel receiver = DatagramChannel.open())
+        {
+            sender.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            receiver.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            SocketAddress target = receiver.getLocalAddress();
+            DatagramWatcher watcher = loop.datagramWatcher(0, sender, 2, 64);
+            // Not started, so queued to be flushed on WRITE readiness, including
+            // an empty datagram (which is sent with a count of 0):
+            assertFalse(watcher.send(ByteBuffer.wrap("a".getBytes()), target));
+            assertFalse(watcher.send(ByteBuffer.allocate(0), target));
+            assertFalse(watcher.send(ByteBuffer.wrap("c".getBytes()), target));
+            assertEquals(3, watcher.pendingDatagrams());
+            // A datagram that is never considered sent would keep the loop running:
+            Timer timeout = loop.timer(0)
+                .callback(t -> loop.breakAll())
+                .afterMillis(5000)
+                .start();
+            loop.checkWatcher(1)
+                .callback(w -> {
+                    if (0 == watcher.pendingDatagrams()) {
+                        interestOps.add(watcher.watcher().interestOps());
+                        w.stop();
+                        watcher.stop();
+                        timeout.stop();
+                    }
+                })
+                .start();
+            watcher.start();
+            assertEquals(IOWatcher.Operation.READ.getCode() | IOWatcher.Operation.WRITE.getCode(),
+                watcher.watcher().interestOps());
+            loop.run();
+            assertEquals(0, watcher.pendingDatagrams());
+            // WRITE interest is dropped once the queue is flushed:
+            assertEquals(List.of(IOWatcher.Operation.READ.getCode()), interestOps);
+            // Each datagram was sent exactly once, in order:
+            ByteBuffer buffer = ByteBuffer.allocate(64);
+            for (String expected : new String[] { "a", "", "c" }) {
+                buffer.clear();
+                assertEquals(sender.getLocalAddress(), receiver.receive(buffer));
+                assertEquals(expected, new String(buffer.array(), 0, buffer.position()));
+            }
+            receiver.configureBlocking(false);
+            assertNull(receiver.receive(buffer));
+        }
+    }
+
+    @Test
+    public void testPortUnreachable() throws Exception {
+        List<IOException> errors = new ArrayList<>();
+        List<String> received = new ArrayList<>();
+        SocketAddress closedAddress;
+        try (DatagramChannel closed = DatagramChannel.open()) {
+            closed.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            closedAddress = closed.getLocalAddress();
+        }
+        try (EventLoop loop = new EventLoop();
+            DatagramChannel client = DatagramChannel.open();
+            DatagramChannel server = DatagramChannel.open())
+        {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            client.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            client.connect(closedAddress);
+            // The ICMP error would leave the loop running if it was not reported:
+            Timer timeout = loop.timer(0)
+                .callback(t -> loop.breakAll())
+                .afterMillis(5000)
+                .start();
+            DatagramWatcher watcher = loop.datagramWatcher(0, client, 4, 64)
+                .onReceive(w -> {
+                    received.add(UTF_8.decode(w.datagram(0)).toString());
+                    w.stop();
+                    timeout.stop();
+                })
+                .onError(ex -> {
+                    errors.add(ex);
+                    // The channel is still usable, reconnect to a listening peer:
+                    DatagramChannel channel = client.disconnect();
+                    channel.connect(server.getLocalAddress());
+                    server.send(ByteBuffer.wrap("pong".getBytes(UTF_8)), channel.getLocalAddress());
+                })
+                .start();
+            assertTrue(watcher.send(ByteBuffer.wrap("ping".getBytes(UTF_8)), null));
+            loop.run();
+            assertTrue(client.isOpen());
+        }
+        assertEquals(1, errors.size(), "errors " + errors);
+        assertTrue(errors.get(0) instanceof PortUnreachableException, "error " + errors.get(0));
+        assertEquals(List.of("pong"), received);
+    }
+
+    @Test
+    public void testInvalidArguments() throws Exception {
+        try (EventLoop loop = new EventLoop(); DatagramChannel channel = DatagramChannel.open()) {
+            assertThrows(IllegalArgumentException.class, () -> loop.datagramWatcher(0, channel, 0, 64));
+            assertThrows(IllegalArgumentException.class, () -> loop.datagramWatcher(0, channel, 4, 0));
+        }
+    }
+}
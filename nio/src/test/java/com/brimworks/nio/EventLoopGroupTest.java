@@ -0,0 +1,89 @@
+package com.brimworks.nio;
+
+import org.junit.jupiter.api.Test;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EventLoopGroupTest {
+    @Test
+    public void testRoundRobin() throws Exception {
+        try (EventLoopGroup group = new EventLoopGroup(3)) {
+            group.start();
+            assertTrue(group.isRunning());
+            int count = 6;
+            CountDownLatch latch = new CountDownLatch(count);
+            Set<Thread> threads = ConcurrentHashMap.newKeySet();
+            List<Pipe> pipes = new ArrayList<>();
+            List<EventLoop> assigned = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                Pipe pipe = Pipe.open();
+                pipe.source().configureBlocking(false);
+                pipes.add(pipe);
+                ByteBuffer input = ByteBuffer.allocate(16);
+                assigned.add(group.ioWatcher(0, pipe.source(), watcher -> watcher
+                    .callback(w -> {
+                        pipe.source().read(input);
+                        threads.add(Thread.currentThread());
+                        w.stop();
+                        latch.countDown();
+                    })
+                    .interestOps(IOWatcher.Operation.READ)
+                    .start()));
+            }
+            for (int i = 0; i < count; i++) {
+                assertSame(group.eventLoop(i % 3), assigned.get(i));
+                pipes.get(i).sink().write(ByteBuffer.wrap("hello".getBytes(UTF_8)));
+            }
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+            assertEquals(3, threads.size());
+            group.stop();
+            assertFalse(group.isRunning());
+            for (int i = 0; i < 3; i++) {
+                assertEquals(2, group.channelCount(i));
+            }
+        }
+    }
+
+    @Test
+    public void testHashOfKey() throws Exception {
+        try (EventLoopGroup group = new EventLoopGroup(4, i -> new EventLoop(), ChannelAssignment.hashOfKey())) {
+            ChannelAssignment assignment = ChannelAssignment.hashOfKey();
+            for (int i = 0; i < 100; i++) {
+                String key = "user-" + i;
+                int index = assignment.choose(group, key);
+                assertTrue(index >= 0 && index < 4);
+                assertEquals(index, assignment.choose(group, new String(key)));
+            }
+            assertEquals(assignment.choose(group, null), assignment.choose(group, null));
+        }
+    }
+
+    @Test
+    public void testLeastConnections() throws Exception {
+        try (EventLoopGroup group = new EventLoopGroup(2, i -> new EventLoop(), ChannelAssignment.leastConnections())) {
+            Pipe pipe = Pipe.open();
+            pipe.source().configureBlocking(false);
+            pipe.sink().configureBlocking(false);
+            // Not started, so registrations stay in flight:
+            assertSame(group.eventLoop(0), group.ioWatcher(0, pipe.source(), w -> {}));
+            assertSame(group.eventLoop(1), group.ioWatcher(0, pipe.sink(), w -> {}));
+            assertEquals(1, group.channelCount(0));
+            assertEquals(1, group.channelCount(1));
+            group.start();
+            group.stop();
+            assertEquals(1, group.channelCount(0));
+            assertEquals(1, group.channelCount(1));
+        }
+    }
+}
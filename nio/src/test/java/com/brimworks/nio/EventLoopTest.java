@@ -1,17 +1,35 @@
 package com.brimworks.nio;
 
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.nio.channels.Pipe;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 import static org.hamcrest.MatcherAssert.assertThat; 
 import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class EventLoopTest {
     @Test
@@ -82,4 +100,480 @@ public class EventLoopTest {
         assertEquals(0, loop.loopDepth());
         assertTrue(timerTriggered.get());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testExecute() throws Exception {
+        EventLoop loop = new EventLoop();
+        List<Integer> ran = new ArrayList<>();
+        CountDownLatch parked = new CountDownLatch(1);
+        loop.ref();
+        loop.execute(() -> {
+            assertTrue(loop.inEventLoop());
+            // From the loop thread, ran before the next poll:
+            loop.execute(() -> {
+                ran.add(-1);
+                parked.countDown();
+            });
+        });
+        Thread producer = new Thread(() -> {
+            try {
+                parked.await();
+                // Give the loop time to block in select:
+                Thread.sleep(50);
+            } catch (InterruptedException ex) {
+                return;
+            }
+            for (int i = 0; i < 1000; i++) {
+                int value = i;
+                loop.execute(() -> ran.add(value));
+            }
+            loop.execute(loop::breakAll);
+        });
+        producer.start();
+        loop.run();
+        producer.join();
+        assertFalse(loop.inEventLoop());
+        assertEquals(1001, ran.size());
+        for (int i = 0; i < ran.size(); i++) {
+            assertEquals(i - 1, ran.get(i));
+        }
+    }
+
+    @Test
+    public void testSchedule() throws Exception {
+        EventLoop loop = new EventLoop();
+        long t0 = System.nanoTime();
+        long[] ranAt = new long[1];
+        Thread producer = new Thread(() -> loop.schedule(() -> {
+            ranAt[0] = System.nanoTime();
+            loop.breakAll();
+        }, 20, TimeUnit.MILLISECONDS));
+        loop.ref();
+        producer.start();
+        loop.run();
+        producer.join();
+        assertThat(ranAt[0] - t0, greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(20)));
+    }
+
+    @Test
+    public void testSteadyStateAllocation() throws Exception {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        Set<Integer> fds = openFds();
+        EventLoop loop = new EventLoop();
+        Pipe pipe = Pipe.open();
+        // The JDK selector boxes the fd of each ready key, which allocates for
+        // fds above 127, so depends on how many fds are open (or leaked):
+        Set<Integer> opened = openFds();
+        opened.removeAll(fds);
+        Assumptions.assumeTrue(opened.stream().allMatch(fd -> fd < 128), "fds " + opened);
+        pipe.sink().configureBlocking(false);
+        pipe.source().configureBlocking(false);
+        ByteBuffer output = ByteBuffer.allocateDirect(1);
+        ByteBuffer input = ByteBuffer.allocateDirect(1);
+        int[] remaining = new int[1];
+        loop.ioWatcher(0, pipe.sink())
+            .callback(watcher -> {
+                output.clear();
+                pipe.sink().write(output);
+            })
+            .interestOps(IOWatcher.Operation.WRITE)
+            .start();
+        loop.ioWatcher(0, pipe.source())
+            .callback(watcher -> {
+                input.clear();
+                pipe.source().read(input);
+                if (--remaining[0] <= 0) {
+                    loop.breakAll();
+                }
+            })
+            .interestOps(IOWatcher.Operation.READ)
+            .start();
+        loop.timer(0).afterMillis(60000).start();
+
+        // Warm up:
+        remaining[0] = 20000;
+        loop.run();
+
+        remaining[0] = 20000;
+        long iterations = loop.loopIterations();
+        long threadId = Thread.currentThread().getId();
+        long allocated = threads.getThreadAllocatedBytes(threadId);
+        loop.run();
+        allocated = threads.getThreadAllocatedBytes(threadId) - allocated;
+        iterations = loop.loopIterations() - iterations;
+        assertThat(iterations, greaterThanOrEqualTo(20000L));
+        // Every allocation is at least 16 bytes, so less than a byte per iteration
+        // means nothing is allocated per iteration (the rest is JIT noise):
+        assertThat(allocated, lessThan(iterations));
+        pipe.sink().close();
+        pipe.source().close();
+        loop.close();
+    }
+
+    /**
+     * @return the file descriptors open by this process, empty if unknown.
+     */
+    private static Set<Integer> openFds() throws IOException {
+        Set<Integer> fds = new HashSet<>();
+        Path dir = Paths.get("/proc/self/fd");
+        if (Files.isDirectory(dir)) {
+            try (Stream<Path> paths = Files.list(dir)) {
+                paths.forEach(path -> fds.add(Integer.parseInt(path.getFileName().toString())));
+            }
+        }
+        return fds;
+    }
+
+    @Test
+    public void testPrepareCheckIdle() throws Exception {
+        EventLoop loop = new EventLoop();
+        Pipe pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+        pipe.sink().write(ByteBuffer.wrap("hello".getBytes(UTF_8)));
+        List<String> events = new ArrayList<>();
+        ByteBuffer input = ByteBuffer.allocate(16);
+        PrepareWatcher prepare = loop.prepareWatcher(0)
+            .callback(w -> events.add("prepare"))
+            .start();
+        CheckWatcher check = loop.checkWatcher(0)
+            .callback(w -> events.add("check"))
+            .start();
+        IOWatcher reader = loop.ioWatcher(0, pipe.source())
+            .callback(w -> {
+                events.add("io");
+                pipe.source().read(input);
+            })
+            .interestOps(IOWatcher.Operation.READ)
+            .start();
+        loop.idleWatcher(0)
+            .callback(w -> {
+                events.add("idle");
+                w.stop();
+                reader.stop();
+            })
+            .start();
+        loop.run();
+        assertEquals(List.of(
+            "prepare", "io", "check",
+            "prepare", "idle", "check"), events);
+        // The third iteration finds no active watchers:
+        assertEquals(3, loop.loopIterations());
+        assertTrue(prepare.isActive());
+        assertTrue(check.isActive());
+
+        // Prepare and check watchers do not keep the loop running:
+        events.clear();
+        loop.run();
+        assertEquals(List.of(), events);
+    }
+
+    @Test
+    public void testPrepareBreak() throws Exception {
+        EventLoop loop = new EventLoop();
+        int[] count = new int[1];
+        loop.prepareWatcher(1)
+            .callback(w -> {
+                if (++count[0] == 3) {
+                    loop.breakOne();
+                }
+            })
+            .start();
+        loop.timer(0).repeatMillis(1).start();
+        loop.run();
+        assertEquals(3, count[0]);
+        assertEquals(3, loop.loopIterations());
+    }
+
+    @Test
+    public void testPrepareStartedDuringPrepare() throws Exception {
+        EventLoop loop = new EventLoop();
+        List<String> events = new ArrayList<>();
+        // A late prepare watcher waiting for the next iteration would block:
+        Timer timeout = loop.timer(0)
+            .callback(t -> loop.breakAll())
+            .afterMillis(5000)
+            .start();
+        PrepareWatcher late = loop.prepareWatcher(0)
+            .callback(w -> {
+                events.add("late " + loop.loopIterations());
+                w.stop();
+            });
+        PrepareWatcher fromTask = loop.prepareWatcher(0)
+            .callback(w -> {
+                events.add("task " + loop.loopIterations());
+                w.stop();
+            });
+        loop.prepareWatcher(0)
+            .callback(w -> {
+                events.add("prepare " + loop.loopIterations());
+                w.stop();
+                // Started during the prepare pass, by a prepare watcher and
+                // by a task, both run before this iteration polls:
+                late.start();
+                loop.execute(fromTask::start);
+            })
+            .start();
+        loop.checkWatcher(0)
+            .callback(w -> {
+                events.add("check " + loop.loopIterations());
+                timeout.stop();
+                loop.breakAll();
+            })
+            .start();
+        loop.run();
+        assertEquals(List.of("prepare 1", "late 1", "task 1", "check 1"), events);
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        EventLoop loop = new EventLoop();
+        assertEquals(null, loop.metrics());
+        EventLoopMetrics metrics = loop.enableMetrics();
+        Pipe pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+        ByteBuffer input = ByteBuffer.allocate(16);
+        loop.ioWatcher(2, pipe.source())
+            .callback(w -> {
+                pipe.source().read(input);
+                w.stop();
+            })
+            .interestOps(IOWatcher.Operation.READ)
+            .start();
+        loop.timer(1)
+            .callback(t -> {
+                // A slow callback:
+                long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(5);
+                while (System.nanoTime() - end < 0) {
+                    Thread.onSpinWait();
+                }
+            })
+            .afterMillis(1)
+            .start();
+        loop.ref();
+        Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(20);
+                pipe.sink().write(ByteBuffer.wrap("hello".getBytes(UTF_8)));
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+            loop.execute(loop::breakAll);
+        });
+        producer.start();
+        loop.run();
+        producer.join();
+
+        assertThat(metrics.selectTime().count(), greaterThanOrEqualTo(2L));
+        assertEquals(1, metrics.timerLag().count());
+        assertEquals(1, metrics.callbackTime(1).count());
+        assertThat(metrics.callbackTime(1).max(), greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(5)));
+        assertEquals(1, metrics.callbackTime(2).count());
+        assertEquals(null, metrics.callbackTime(0));
+        assertThat(metrics.pendingDepth().count(), greaterThanOrEqualTo(2L));
+        assertThat(metrics.wakeups(), lessThan(3L));
+    }
+
+    @Test
+    public void testRequeue() throws Exception {
+        EventLoop loop = new EventLoop().runBudget(3);
+        assertThrows(IllegalArgumentException.class, () -> loop.runBudget(0));
+        List<String> runs = new ArrayList<>();
+        List<Boolean> requeued = new ArrayList<>();
+        List<Pipe> pipes = new ArrayList<>();
+        long[] iteration = { -1 };
+        for (String name : new String[] { "a", "b" }) {
+            Pipe pipe = Pipe.open();
+            pipes.add(pipe);
+            pipe.source().configureBlocking(false);
+            pipe.sink().write(ByteBuffer.wrap(name.getBytes(UTF_8)));
+            // Never read, so the pipe stays readable:
+            loop.ioWatcher(1, pipe.source())
+                .callback(w -> {
+                    if (iteration[0] < 0) {
+                        iteration[0] = loop.loopIterations();
+                    } else if (iteration[0] != loop.loopIterations()) {
+                        loop.breakAll();
+                        return;
+                    }
+                    runs.add(name);
+                    if ("a".equals(name)) {
+                        requeued.add(loop.requeue(w));
+                    }
+                })
+                .interestOps(IOWatcher.Operation.READ)
+                .start();
+        }
+        loop.run();
+        // "a" runs at most 3 times per iteration, after "b" ran:
+        assertEquals(4, runs.size());
+        assertEquals(3, runs.stream().filter("a"::equals).count());
+        assertTrue(runs.indexOf("b") < runs.lastIndexOf("a"));
+        assertEquals(List.of(true, true, false), requeued);
+        for (Pipe pipe : pipes) {
+            pipe.sink().close();
+            pipe.source().close();
+        }
+        loop.close();
+    }
+
+    @Test
+    public void testDeferredInterestOps() throws Exception {
+        EventLoop loop = new EventLoop();
+        Pipe pipe = Pipe.open();
+        pipe.sink().configureBlocking(false);
+        IOWatcher watcher = loop.ioWatcher(1, pipe.sink())
+            .interestOps(IOWatcher.Operation.WRITE)
+            .start();
+        int write = IOWatcher.Operation.WRITE.getCode();
+        // Applied before the next select:
+        assertEquals(0, watcher.selectionKey().interestOps());
+        for (int i = 0; i < 5; i++) {
+            watcher.interestOps(0);
+            watcher.interestOps(write);
+        }
+        assertEquals(write, watcher.interestOps());
+        loop.applyInterestOps();
+        assertEquals(write, watcher.selectionKey().interestOps());
+        watcher.stop();
+        assertEquals(write, watcher.selectionKey().interestOps());
+        loop.applyInterestOps();
+        assertEquals(0, watcher.selectionKey().interestOps());
+        // Closed channels are skipped:
+        watcher.start();
+        pipe.sink().close();
+        loop.applyInterestOps();
+        assertFalse(watcher.selectionKey().isValid());
+        pipe.source().close();
+        loop.close();
+    }
+
+    @Test
+    public void testSpin() throws Exception {
+        EventLoop loop = new EventLoop();
+        assertThrows(IllegalArgumentException.class, () -> loop.spinMicros(-1));
+        assertEquals(500, loop.spinMicros(500).spinMicros());
+        Pipe pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+        ByteBuffer input = ByteBuffer.allocate(16);
+        loop.ioWatcher(1, pipe.source())
+            .callback(w -> pipe.source().read(input))
+            .interestOps(IOWatcher.Operation.READ)
+            .start();
+        Thread producer = new Thread(() -> {
+            try {
+                // Both within and beyond the spin time:
+                for (int i = 0; i < 4; i++) {
+                    pipe.sink().write(ByteBuffer.wrap(new byte[] { (byte)i }));
+                    Thread.sleep(i);
+                }
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+            loop.execute(loop::breakAll);
+        });
+        producer.start();
+        loop.run();
+        producer.join();
+        assertEquals(4, input.position());
+    }
+
+    @Test
+    public void testTimerSlack() throws Exception {
+        // Rounded up within the window to the most trailing zero bits:
+        assertEquals(100, Timer.applySlack(100, 0));
+        assertEquals(128, Timer.applySlack(100, 30));
+        assertEquals(112, Timer.applySlack(100, 27));
+        assertEquals(0, Timer.applySlack(-5, 10));
+
+        long t0 = System.nanoTime();
+        EventLoop loop = new EventLoop();
+        EventLoopMetrics metrics = loop.enableMetrics();
+        List<Long> firedIterations = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            long afterMillis = 10 + i;
+            loop.timer(1)
+                .callback(t -> {
+                    assertThat(System.nanoTime() - t0, greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(afterMillis)));
+                    firedIterations.add(loop.loopIterations());
+                })
+                .afterMillis(afterMillis)
+                .slackMillis(20)
+                .start();
+        }
+        loop.run();
+        assertEquals(10, firedIterations.size());
+        // Deadlines spread over 10ms with 20ms of slack are rounded to at most
+        // two multiples of 2^24ns:
+        assertThat(firedIterations.stream().distinct().count(), lessThan(3L));
+        // So at most two wakeups fired all ten timers:
+        assertThat(metrics.coalescedWakeups(), greaterThanOrEqualTo(8L));
+        assertThat(metrics.coalescedWakeups(), lessThan(10L));
+
+        // A lone slack timer fired late by a busy loop saves no wakeup:
+        EventLoop busyLoop = new EventLoop();
+        EventLoopMetrics busyMetrics = busyLoop.enableMetrics();
+        busyLoop.timer(1)
+            .callback(t -> {
+                long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(30);
+                while (System.nanoTime() - end < 0) {
+                    Thread.onSpinWait();
+                }
+            })
+            .start();
+        busyLoop.timer(1)
+            .afterMillis(1)
+            .slackMillis(20)
+            .start();
+        busyLoop.run();
+        assertEquals(0, busyMetrics.coalescedWakeups());
+    }
+
+    @Test
+    public void testNanosTimer() throws Exception {
+        long t0 = System.nanoTime();
+        EventLoop loop = new EventLoop();
+        long intervalNanos = TimeUnit.MICROSECONDS.toNanos(100);
+        List<Long> fired = new ArrayList<>();
+        Timer timer = loop.timer(1)
+            .callback(t -> {
+                fired.add(System.nanoTime());
+                if (fired.size() == 100) {
+                    t.stop();
+                }
+            })
+            .afterNanos(intervalNanos)
+            .repeatNanos(intervalNanos);
+        assertEquals(0, timer.afterMillis());
+        assertEquals(intervalNanos, timer.remainingNanos());
+        timer.start();
+        loop.run();
+        assertEquals(100, fired.size());
+        // Never early:
+        for (int i = 0; i < fired.size(); i++) {
+            assertThat(fired.get(i) - t0, greaterThanOrEqualTo((i + 1) * intervalNanos));
+        }
+        // Rounding up to whole milliseconds would take at least 100ms, 10 times
+        // the expected 10ms, leaving headroom for a loaded machine:
+        assertThat(fired.get(99) - t0, lessThan(TimeUnit.MILLISECONDS.toNanos(100)));
+    }
+
+    @Test
+    public void testConnectRefused() throws Exception {
+        InetSocketAddress address;
+        try (ServerSocketChannel listener = ServerSocketChannel.open()) {
+            listener.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            address = (InetSocketAddress) listener.getLocalAddress();
+        }
+        EventLoop loop = new EventLoop();
+        List<IOException> errors = new ArrayList<>();
+        SocketChannel channel = loop.connect(0, address, c -> {
+            throw new AssertionError("connected to a closed port");
+        }, errors::add);
+        // The failure is reported to onFailed rather than thrown by run():
+        loop.run();
+        assertEquals(1, errors.size(), "errors " + errors);
+        assertFalse(channel.isOpen());
+        loop.close();
+    }
+}
@@ -0,0 +1,51 @@
+package com.brimworks.nio;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LatencyHistogramTest {
+    @Test
+    public void testEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.max());
+        assertEquals(0, histogram.valueAtPercentile(99), 0);
+        assertEquals(0.0, histogram.mean());
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 100_000; i++) {
+            histogram.record(i * 1000);
+        }
+        assertEquals(100_000, histogram.count());
+        assertEquals(100_000_000, histogram.max());
+        assertEquals(50_000_500.0, histogram.mean(), 0.1);
+        assertWithin(50_000_000, histogram.valueAtPercentile(50));
+        assertWithin(99_000_000, histogram.valueAtPercentile(99));
+        assertEquals(100_000_000, histogram.valueAtPercentile(100));
+    }
+
+    @Test
+    public void testBuckets() {
+        // Small values are exact:
+        for (int i = 0; i < 32; i++) {
+            assertEquals(i, LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(i)));
+        }
+        // Larger values are within ~3%:
+        for (long value = 32; value > 0 && value < Long.MAX_VALUE / 3; value = value * 3 + 1) {
+            long upper = LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(value));
+            assertTrue(upper >= value);
+            assertWithin(value, upper);
+        }
+        assertEquals(Long.MAX_VALUE,
+            LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(Long.MAX_VALUE)));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(Math.abs(expected - actual) <= expected / 32 + 1,
+            "expected " + actual + " to be within 3% of " + expected);
+    }
+}
@@ -0,0 +1,98 @@
+package com.brimworks.nio;
+
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MessageWatcherTest {
+    @Test
+    public void testShards() throws Exception {
+        int producers = 3;
+        int count = 10_000;
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicLong reply = new AtomicLong();
+        try (EventLoopGroup group = new EventLoopGroup(2)) {
+            EventLoop loopA = group.eventLoop(0);
+            EventLoop loopB = group.eventLoop(1);
+            // Replies from shard B to shard A:
+            MessageWatcher<Long> replies = loopA.<Long>messageWatcher(0, 16, true)
+                .receiver(sum -> {
+                    assertTrue(loopA.inEventLoop());
+                    reply.set(sum);
+                    done.countDown();
+                })
+                .start();
+            // State owned by shard B, only touched on its thread:
+            long[] state = new long[2];
+            MessageWatcher<Integer> requests = loopB.<Integer>messageWatcher(0, 64, false)
+                .batchSize(16)
+                .receiver(value -> {
+                    assertTrue(loopB.inEventLoop());
+                    state[0] += value;
+                    if (++state[1] == producers * count) {
+                        assertTrue(replies.offer(state[0]));
+                    }
+                })
+                .start();
+            assertEquals(64, requests.capacity());
+            group.start();
+            Thread[] threads = new Thread[producers];
+            for (int p = 0; p < producers; p++) {
+                threads[p] = new Thread(() -> {
+                    for (int i = 0; i < count; i++) {
+                        while (!requests.offer(i)) {
+                            // Yield rather than spin, the consumer may share the core:
+                            Thread.yield();
+                        }
+                    }
+                });
+                threads[p].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        }
+        assertEquals((long)producers * count * (count - 1) / 2, reply.get());
+    }
+
+    @Test
+    public void testStopped() throws Exception {
+        EventLoop loop = new EventLoop();
+        List<String> received = new ArrayList<>();
+        List<Long> iterations = new ArrayList<>();
+        MessageWatcher<String> watcher = loop.<String>messageWatcher(0, 2, true)
+            .batchSize(1);
+        watcher.receiver(message -> {
+            received.add(message);
+            iterations.add(loop.loopIterations());
+            if (received.size() == 2) {
+                watcher.stop();
+            }
+        });
+        assertThrows(IllegalArgumentException.class, () -> watcher.offer(null));
+        assertTrue(watcher.offer("a"));
+        assertTrue(watcher.offer("b"));
+        assertFalse(watcher.offer("c"));
+        // Not started, so the messages wait:
+        loop.run();
+        assertTrue(received.isEmpty());
+        watcher.start();
+        loop.run();
+        assertEquals(List.of("a", "b"), received);
+        // A batch size of 1 takes a loop iteration per message:
+        assertEquals(2, iterations.size());
+        assertFalse(iterations.get(0).equals(iterations.get(1)), "iterations " + iterations);
+        assertFalse(watcher.isActive());
+        assertSame(loop, watcher.eventLoop());
+        loop.close();
+    }
+}
@@ -0,0 +1,77 @@
+package com.brimworks.nio;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MpscArrayQueueTest {
+    @Test
+    public void testSingleThread() {
+        MpscArrayQueue<Integer> queue = new MpscArrayQueue<>(3, false);
+        assertEquals(4, queue.capacity());
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        // Wrap around the array a few times:
+        for (int lap = 0; lap < 3; lap++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(queue.offer(i));
+            }
+            assertFalse(queue.offer(4));
+            assertEquals(0, queue.poll());
+            assertTrue(queue.offer(4));
+            for (int i = 1; i <= 4; i++) {
+                assertEquals(i, queue.poll());
+            }
+            assertNull(queue.poll());
+            assertTrue(queue.isEmpty());
+        }
+        assertEquals(1, new MpscArrayQueue<>(1, true).capacity());
+    }
+
+    @Test
+    public void testProducers() throws Exception {
+        produce(4, false);
+    }
+
+    @Test
+    public void testSingleProducer() throws Exception {
+        produce(1, true);
+    }
+
+    private static void produce(int producers, boolean isSingleProducer) throws Exception {
+        MpscArrayQueue<int[]> queue = new MpscArrayQueue<>(64, isSingleProducer);
+        int count = 100_000;
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < count; i++) {
+                    int[] value = new int[] { producer, i };
+                    while (!queue.offer(value)) {
+                        // Yield rather than spin, the consumer may share the core:
+                        Thread.yield();
+                    }
+                }
+            });
+            threads[p].start();
+        }
+        // Values from each producer must arrive in order:
+        int[] expected = new int[producers];
+        int total = 0;
+        while (total < producers * count) {
+            int[] value = queue.poll();
+            if (null == value) {
+                Thread.yield();
+                continue;
+            }
+            assertEquals(expected[value[0]]++, value[1]);
+            total++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(queue.poll());
+    }
+}
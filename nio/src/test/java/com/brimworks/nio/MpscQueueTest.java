@@ -0,0 +1,56 @@
+package com.brimworks.nio;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MpscQueueTest {
+    @Test
+    public void testSingleThread() {
+        MpscQueue<Integer> queue = new MpscQueue<>();
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        queue.offer(1);
+        queue.offer(2);
+        assertEquals(1, queue.poll());
+        queue.offer(3);
+        assertEquals(2, queue.poll());
+        assertEquals(3, queue.poll());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testProducers() throws Exception {
+        MpscQueue<int[]> queue = new MpscQueue<>();
+        int producers = 4;
+        int count = 100_000;
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < count; i++) {
+                    queue.offer(new int[] { producer, i });
+                }
+            });
+            threads[p].start();
+        }
+        // Values from each producer must arrive in order:
+        int[] expected = new int[producers];
+        int total = 0;
+        while (total < producers * count) {
+            int[] value = queue.poll();
+            if (null == value) {
+                Thread.onSpinWait();
+                continue;
+            }
+            assertEquals(expected[value[0]]++, value[1]);
+            total++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(queue.poll());
+    }
+}
@@ -0,0 +1,133 @@
+package com.brimworks.nio;
+
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OffloadWatcherTest {
+    @Test
+    public void testResultOnLoopThread() throws Exception {
+        EventLoop loop = new EventLoop();
+        List<String> results = new ArrayList<>();
+        List<Thread> taskThreads = new ArrayList<>();
+        OffloadWatcher<String> watcher = loop.offload(1, () -> {
+                synchronized (taskThreads) {
+                    taskThreads.add(Thread.currentThread());
+                }
+                Thread.sleep(20);
+                return "done";
+            })
+            .callback(w -> {
+                assertTrue(loop.inEventLoop());
+                assertFalse(w.isActive());
+                assertNull(w.error());
+                results.add(w.result());
+                if (results.size() < 3) {
+                    w.start();
+                }
+            })
+            .start();
+        assertTrue(watcher.isActive());
+        // The outstanding task keeps the loop alive:
+        loop.run();
+        assertEquals(List.of("done", "done", "done"), results);
+        assertFalse(watcher.isActive());
+        synchronized (taskThreads) {
+            assertEquals(3, taskThreads.size());
+            assertFalse(taskThreads.contains(Thread.currentThread()));
+        }
+    }
+
+    @Test
+    public void testError() throws Exception {
+        EventLoop loop = new EventLoop();
+        IOException failure = new IOException("failed");
+        List<Throwable> errors = new ArrayList<>();
+        loop.<String>offload(1, () -> {
+                throw failure;
+            })
+            .callback(w -> {
+                assertNull(w.result());
+                errors.add(w.error());
+            })
+            .start();
+        loop.run();
+        assertEquals(1, errors.size());
+        assertSame(failure, errors.get(0));
+    }
+
+    @Test
+    public void testStopCancels() throws Exception {
+        EventLoop loop = new EventLoop();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        List<Object> results = new ArrayList<>();
+        OffloadWatcher<Object> watcher = loop.<Object>offload(1, () -> {
+                started.countDown();
+                try {
+                    Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                } catch (InterruptedException ex) {
+                    interrupted.countDown();
+                }
+                return "late";
+            })
+            .callback(w -> results.add(w.result()))
+            .start();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        watcher.stop();
+        assertFalse(watcher.isActive());
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+        // Nothing keeps the loop alive:
+        loop.run();
+        assertEquals(0, results.size());
+    }
+
+    @Test
+    public void testExecutor() throws Exception {
+        EventLoop loop = new EventLoop();
+        List<Runnable> submitted = new ArrayList<>();
+        loop.offloadExecutor(submitted::add);
+        List<Integer> results = new ArrayList<>();
+        loop.offload(1, () -> 42)
+            .callback(w -> results.add(w.result()))
+            .start();
+        assertEquals(1, submitted.size());
+        // Completing on the loop thread must not wake the selector:
+        submitted.get(0).run();
+        loop.run();
+        assertEquals(List.of(42), results);
+    }
+
+    @Test
+    public void testRejected() throws Exception {
+        EventLoop loop = new EventLoop();
+        List<Runnable> submitted = new ArrayList<>();
+        loop.offloadExecutor(runnable -> {
+            throw new RejectedExecutionException("shut down");
+        });
+        List<Integer> results = new ArrayList<>();
+        OffloadWatcher<Integer> watcher = loop.offload(1, () -> 42)
+            .callback(w -> results.add(w.result()));
+        assertThrows(RejectedExecutionException.class, watcher::start);
+        // Not started, so doesn't keep the loop alive:
+        assertFalse(watcher.isActive());
+        loop.run();
+        // And may be started again:
+        loop.offloadExecutor(submitted::add);
+        watcher.start();
+        assertEquals(1, submitted.size());
+        submitted.get(0).run();
+        loop.run();
+        assertEquals(List.of(42), results);
+    }
+}
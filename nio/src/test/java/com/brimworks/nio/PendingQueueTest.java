@@ -0,0 +1,73 @@
+package com.brimworks.nio;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PendingQueueTest {
+    @Test
+    public void testPriorityThenFifo() throws Exception {
+        EventLoop loop = new EventLoop();
+        PendingQueue queue = new PendingQueue();
+        Watcher low1 = loop.timer(Watcher.MIN_PRIORITY);
+        Watcher low2 = loop.timer(Watcher.MIN_PRIORITY);
+        Watcher mid1 = loop.timer(0);
+        Watcher mid2 = loop.timer(0);
+        Watcher mid3 = loop.timer(0);
+        Watcher high = loop.timer(Watcher.MAX_PRIORITY);
+        queue.add(low1);
+        queue.add(mid1);
+        queue.add(low2);
+        queue.add(mid2);
+        queue.add(high);
+        queue.add(mid3);
+        // Adding twice is a no-op:
+        queue.add(mid1);
+        assertEquals(6, queue.size());
+        assertSame(high, queue.poll());
+        assertSame(mid1, queue.poll());
+        assertSame(mid2, queue.poll());
+        assertSame(mid3, queue.poll());
+        assertSame(low1, queue.poll());
+        assertSame(low2, queue.poll());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        EventLoop loop = new EventLoop();
+        PendingQueue queue = new PendingQueue();
+        Watcher first = loop.timer(1);
+        Watcher middle = loop.timer(1);
+        Watcher last = loop.timer(1);
+        Watcher other = loop.timer(2);
+        queue.add(first);
+        queue.add(middle);
+        queue.add(last);
+        queue.add(other);
+        queue.remove(middle);
+        queue.remove(other);
+        // Removing a watcher which is not pending is a no-op:
+        queue.remove(other);
+        assertEquals(2, queue.size());
+        assertSame(first, queue.poll());
+        queue.remove(last);
+        assertNull(queue.poll());
+        // Removed watchers can be added again:
+        queue.add(last);
+        queue.add(middle);
+        assertSame(last, queue.poll());
+        assertSame(middle, queue.poll());
+    }
+
+    @Test
+    public void testPriorityRange() throws Exception {
+        EventLoop loop = new EventLoop();
+        assertThrows(IllegalArgumentException.class, () -> loop.timer(Watcher.MAX_PRIORITY + 1));
+        assertThrows(IllegalArgumentException.class, () -> loop.timer(Watcher.MIN_PRIORITY - 1));
+    }
+}
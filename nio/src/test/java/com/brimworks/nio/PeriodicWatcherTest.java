@@ -0,0 +1,100 @@
+package com.brimworks.nio;
+
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PeriodicWatcherTest {
+    private static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    @Test
+    public void testNoDrift() throws Exception {
+        EventLoop loop = new EventLoop();
+        List<Long> ticks = new ArrayList<>();
+        long[] missed = new long[1];
+        PeriodicWatcher watcher = loop.periodicWatcher(1)
+            .offsetNanos(INTERVAL_NANOS)
+            .intervalNanos(INTERVAL_NANOS)
+            .callback(w -> {
+                ticks.add(w.tickNanos());
+                missed[0] += w.missedTicks();
+                // Slow callbacks must not delay the next tick:
+                spin(2);
+                if (ticks.size() == 10) {
+                    w.stop();
+                }
+            })
+            .start();
+        assertThrows(IllegalStateException.class, () -> watcher.intervalNanos(1));
+        loop.run();
+        assertFalse(watcher.isActive());
+        assertEquals(10, ticks.size());
+        long expected = 0;
+        for (int i = 0; i < ticks.size(); i++) {
+            expected += INTERVAL_NANOS;
+            assertEquals(0, (ticks.get(i) - expected) % INTERVAL_NANOS);
+            assertThat(ticks.get(i), greaterThanOrEqualTo(expected));
+            expected = ticks.get(i);
+        }
+        assertEquals(ticks.get(9), (10 + missed[0]) * INTERVAL_NANOS);
+    }
+
+    @Test
+    public void testMissedTicks() throws Exception {
+        EventLoop loop = new EventLoop();
+        List<Long> missed = new ArrayList<>();
+        loop.periodicWatcher(1)
+            .intervalNanos(INTERVAL_NANOS)
+            .callback(w -> {
+                missed.add(w.missedTicks());
+                if (missed.size() == 1) {
+                    // Block for more than two intervals:
+                    spin(12);
+                } else {
+                    w.stop();
+                }
+            })
+            .start();
+        loop.run();
+        // Collapsed into one callback rather than a burst:
+        assertEquals(2, missed.size());
+        assertThat(missed.get(1), greaterThanOrEqualTo(1L));
+    }
+
+    @Test
+    public void testWallClock() throws Exception {
+        EventLoop loop = new EventLoop();
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(10);
+        List<Long> ticks = new ArrayList<>();
+        loop.periodicWatcher(1)
+            .anchor(PeriodicWatcher.Anchor.WALL_CLOCK)
+            .intervalNanos(intervalNanos)
+            .callback(w -> {
+                ticks.add(w.tickNanos());
+                assertThat(TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) + TimeUnit.MILLISECONDS.toNanos(1),
+                    greaterThanOrEqualTo(w.tickNanos()));
+                if (ticks.size() == 3) {
+                    w.stop();
+                }
+            })
+            .start();
+        loop.run();
+        assertEquals(3, ticks.size());
+        for (long tick : ticks) {
+            assertEquals(0, tick % intervalNanos);
+        }
+    }
+
+    private static void spin(long millis) {
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        while (System.nanoTime() - end < 0) {
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ReadOnlyBufferException;
+import java.nio.channels.Pipe;
 import org.junit.jupiter.api.Test;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -181,6 +182,18 @@ public class TestRingByteBuffer {
         assertTrue(alias == newBuff);
     }
 
+    @Test
+    public void testEnsureCapacityNotWrapped() {
+        // Valid bytes end exactly at the capacity:
+        RingByteBuffer buff = newBuffer();
+        assertEquals(newBuffer(), buff.ensureCapacity(6));
+        buff.get();
+        assertEquals(1, buff.getBeginOffset());
+        RingByteBuffer newBuff = buff.ensureCapacity(6);
+        assertEquals(4, newBuff.size());
+        assertEquals(buff, newBuff);
+    }
+
     @Test
     public void testWriteToWrapped() throws IOException {
         ByteBufferChannel channel = new ByteBufferChannel(RingByteBuffer.allocate(10));
@@ -232,6 +245,33 @@ public class TestRingByteBuffer {
         assertEquals(0, newBuffer().readFrom(channel));
     }
 
+    @Test
+    public void testReadFromAfterGet() throws IOException {
+        RingByteBuffer buff = RingByteBuffer.allocate(10);
+        buff.putAll(ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5 }));
+        // Leaves the backing buffer's limit below the next write offset:
+        buff.getAll(ByteBuffer.allocate(2));
+        ByteBufferChannel channel = new ByteBufferChannel(newBuffer());
+        assertEquals(5L, buff.readFrom(channel));
+        assertEquals(8, buff.size());
+        buff.getAll(ByteBuffer.allocate(3));
+        assertEquals(newBuffer(), buff);
+    }
+
+    @Test
+    public void testReadFromEof() throws IOException {
+        Pipe pipe = Pipe.open();
+        pipe.sink().close();
+        RingByteBuffer buff = RingByteBuffer.allocate(5);
+        assertEquals(-1L, buff.readFrom(pipe.source()));
+        assertEquals(0, buff.size());
+        // Wrapped invalid bytes:
+        buff.put((byte)0); buff.put((byte)0); buff.get(); buff.get();
+        assertEquals(-1L, buff.readFrom(pipe.source()));
+        assertEquals(0, buff.size());
+        pipe.source().close();
+    }
+
     @Test
     public void testReadFromReadonly() throws IOException {
         ByteBufferChannel channel = new ByteBufferChannel(newBuffer());
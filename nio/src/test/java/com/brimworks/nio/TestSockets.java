@@ -0,0 +1,45 @@
+package com.brimworks.nio;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Socket helpers shared by the tests.
+ */
+final class TestSockets {
+    private TestSockets() {}
+
+    /**
+     * @param bufferSize is the send buffer size of the client and the receive
+     *     buffer size of the server, or 0 for the defaults.
+     * @return a connected pair of loopback sockets, { client, server }.
+     */
+    static SocketChannel[] socketPair(int bufferSize) throws Exception {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            if (bufferSize > 0) {
+                server.setOption(StandardSocketOptions.SO_RCVBUF, bufferSize);
+            }
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            SocketChannel client = SocketChannel.open();
+            if (bufferSize > 0) {
+                client.setOption(StandardSocketOptions.SO_SNDBUF, bufferSize);
+            }
+            client.connect(server.getLocalAddress());
+            return new SocketChannel[] { client, server.accept() };
+        }
+    }
+
+    /**
+     * @return all the bytes removed from inbound, ready to read.
+     */
+    static ByteBuffer drain(RingByteBuffer inbound) {
+        ByteBuffer result = ByteBuffer.allocate(inbound.size());
+        inbound.getAll(result);
+        result.flip();
+        return result;
+    }
+}
@@ -0,0 +1,155 @@
+package com.brimworks.nio;
+
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class TimerWheelTest {
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static Timer newTimer(EventLoop loop, long endNanos) {
+        Timer timer = loop.timer(0);
+        timer.queuedEndNanos = endNanos;
+        return timer;
+    }
+
+    @Test
+    public void testExpiresInOrder() throws Exception {
+        EventLoop loop = new EventLoop();
+        TimerWheel wheel = new TimerWheel();
+        long t0 = System.nanoTime();
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            // Spread timers across the first three levels:
+            wheel.add(newTimer(loop, t0 + random.nextInt(200_000) * MILLI));
+        }
+        assertEquals(1000, wheel.size());
+        long now = t0;
+        long lastEnd = Long.MIN_VALUE;
+        int expired = 0;
+        while (!wheel.isEmpty()) {
+            long next = wheel.nextExpiryNanos();
+            assertTrue(next - now >= -MILLI, "next expiry must not go backwards");
+            now = next;
+            Timer timer;
+            while (null != (timer = wheel.poll(now))) {
+                // Never early, at most one tick late:
+                assertTrue(timer.queuedEndNanos - now <= 0);
+                assertTrue(now - timer.queuedEndNanos < MILLI);
+                assertTrue(timer.queuedEndNanos >= lastEnd || now - lastEnd < MILLI);
+                lastEnd = timer.queuedEndNanos;
+                expired++;
+            }
+        }
+        assertEquals(1000, expired);
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        EventLoop loop = new EventLoop();
+        TimerWheel wheel = new TimerWheel();
+        long t0 = System.nanoTime();
+        Timer near = newTimer(loop, t0 + 5 * MILLI);
+        Timer far = newTimer(loop, t0 + 100_000 * MILLI);
+        Timer kept = newTimer(loop, t0 + 10 * MILLI);
+        wheel.add(near);
+        wheel.add(far);
+        wheel.add(kept);
+        wheel.remove(near);
+        wheel.remove(far);
+        // Removing twice is a no-op:
+        wheel.remove(far);
+        assertEquals(1, wheel.size());
+        assertNull(wheel.poll(t0 + 9 * MILLI));
+        assertSame(kept, wheel.poll(t0 + 11 * MILLI));
+        assertTrue(wheel.isEmpty());
+        assertNull(wheel.poll(t0 + 200_000 * MILLI));
+    }
+
+    @Test
+    public void testBeyondTopLevel() throws Exception {
+        EventLoop loop = new EventLoop();
+        TimerWheel wheel = new TimerWheel(1, TimeUnit.SECONDS);
+        long t0 = System.nanoTime();
+        long end = t0 + TimeUnit.SECONDS.toNanos(1L << 33);
+        wheel.add(newTimer(loop, end));
+        long now = t0;
+        int wakeups = 0;
+        Timer timer = null;
+        while (null == timer) {
+            now = wheel.nextExpiryNanos();
+            timer = wheel.poll(now);
+            wakeups++;
+        }
+        assertTrue(now - end >= 0);
+        assertTrue(wakeups < 10, "expected few cascades, got " + wakeups);
+    }
+
+    @Test
+    public void testEventLoop() throws Exception {
+        long t0 = System.nanoTime();
+        EventLoop loop = new EventLoop(new TimerWheel());
+        List<Integer> fired = new ArrayList<>();
+        Timer stopped = loop.timer(0)
+            .callback(t -> fired.add(0))
+            .afterMillis(5)
+            .start();
+        loop.timer(0)
+            .callback(t -> fired.add(2))
+            .afterMillis(20)
+            .start();
+        loop.timer(0)
+            .callback(t -> fired.add(1))
+            .afterMillis(10)
+            .start();
+        int[] count = new int[1];
+        loop.timer(0)
+            .callback(t -> {
+                if (++count[0] == 3) {
+                    t.stop();
+                }
+            })
+            .repeatMillis(1)
+            .start();
+        stopped.stop();
+        assertFalse(stopped.isActive());
+        loop.run();
+        assertTrue(System.nanoTime() - t0 >= 20 * MILLI);
+        assertEquals(List.of(1, 2), fired);
+        assertEquals(3, count[0]);
+        assertTrue(loop.timerStore().isEmpty());
+    }
+
+    @Test
+    public void testAgain() throws Exception {
+        EventLoop loop = new EventLoop(new TimerWheel());
+        int[] count = new int[1];
+        Timer timeout = loop.timer(0)
+            .callback(t -> count[0]++)
+            .repeatMillis(30);
+        // again() starts the timer:
+        timeout.again();
+        assertTrue(timeout.isActive());
+        // Keep pushing the timeout out, it should never fire:
+        Timer kick = loop.timer(1)
+            .callback(t -> {
+                timeout.again();
+                if (t.eventLoop().loopIterations() > 20) {
+                    t.stop();
+                    timeout.stop();
+                }
+            })
+            .repeatMillis(2)
+            .start();
+        loop.run();
+        assertFalse(kick.isActive());
+        assertEquals(0, count[0]);
+    }
+}
@@ -0,0 +1,77 @@
+package com.brimworks.nio;
+
+import org.junit.jupiter.api.Test;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static com.brimworks.nio.TestSockets.drain;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class UnixDomainSocketTest {
+    @Test
+    public void testEcho() throws Exception {
+        Path dir = Files.createTempDirectory("nio");
+        Path path = dir.resolve("echo.sock");
+        try {
+            assertEquals("ping", echo(UnixDomainSocketAddress.of(path)));
+            // Deleted by close():
+            assertFalse(Files.exists(path));
+        } finally {
+            Files.deleteIfExists(path);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testTcpEcho() throws Exception {
+        assertEquals("ping", echo(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)));
+    }
+
+    /**
+     * Send "ping" to an echo server listening on address.
+     *
+     * @return the echoed message.
+     */
+    private static String echo(SocketAddress address) throws Exception {
+        StringBuilder received = new StringBuilder();
+        try (EventLoopGroup group = new EventLoopGroup(2)) {
+            Acceptor acceptor = new Acceptor(group, address)
+                .handler((loop, channel) -> loop.connection(0, channel, 1024, 1024)
+                    .onRead(c -> c.write(drain(c.inbound())))
+                    .start())
+                .start();
+            group.start();
+            EventLoop loop = new EventLoop();
+            boolean[] connected = new boolean[1];
+            SocketChannel channel = loop.connect(0, acceptor.localAddress(), c -> {
+                assertTrue(c.isConnected());
+                connected[0] = true;
+                loop.connection(0, c, 1024, 1024)
+                    .onRead(connection -> {
+                        received.append(UTF_8.decode(drain(connection.inbound())));
+                        if (received.length() == 4) {
+                            connection.close();
+                        }
+                    })
+                    .start()
+                    .write(ByteBuffer.wrap("ping".getBytes(UTF_8)));
+            }, ex -> {
+                throw ex;
+            });
+            loop.run();
+            assertTrue(connected[0]);
+            assertFalse(channel.isOpen());
+            loop.close();
+            acceptor.close();
+        }
+        return received.toString();
+    }
+}
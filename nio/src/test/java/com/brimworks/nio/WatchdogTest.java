@@ -0,0 +1,58 @@
+package com.brimworks.nio;
+
+import org.junit.jupiter.api.Test;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WatchdogTest {
+    @Test
+    public void testReportsSlowWatcher() throws Exception {
+        EventLoop loop = new EventLoop();
+        List<Watchdog.Report> reports = new CopyOnWriteArrayList<>();
+        Timer fast = loop.timer(2)
+            .afterMillis(1);
+        Timer slow = loop.timer(3)
+            .callback(t -> spin(200))
+            .afterMillis(2);
+        fast.start();
+        slow.start();
+        try (Watchdog watchdog = new Watchdog(20, TimeUnit.MILLISECONDS, reports::add)) {
+            watchdog.watch(loop).start();
+            loop.run();
+        }
+        // The slow callback is reported exactly once:
+        assertEquals(1, reports.size());
+        Watchdog.Report report = reports.get(0);
+        assertSame(slow, report.watcher());
+        assertSame(loop, report.eventLoop());
+        assertEquals(3, report.priority());
+        assertSame(Thread.currentThread(), report.thread());
+        assertThat(report.blockedNanos(), greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(20)));
+        boolean inSpin = false;
+        for (StackTraceElement element : report.stackTrace()) {
+            if ("spin".equals(element.getMethodName())) {
+                inSpin = true;
+            }
+        }
+        assertTrue(inSpin, report.toString());
+    }
+
+    @Test
+    public void testBudget() throws Exception {
+        assertThrows(IllegalArgumentException.class, () -> new Watchdog(0, TimeUnit.MILLISECONDS, r -> {}));
+    }
+
+    private static void spin(long millis) {
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        while (System.nanoTime() - end < 0) {
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.brimworks.nio;
+
+import org.junit.jupiter.api.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WriteQueueTest {
+    /**
+     * Accepts at most limit bytes per write, and counts the writes.
+     */
+    private static class CountingChannel implements GatheringByteChannel {
+        private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        private long limit = Long.MAX_VALUE;
+        private int writes = 0;
+        private int maxLength = 0;
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            writes++;
+            maxLength = Math.max(maxLength, length);
+            long total = 0;
+            for (int i = offset; i < offset + length && total < limit; i++) {
+                ByteBuffer src = srcs[i];
+                while (src.hasRemaining() && total < limit) {
+                    written.write(src.get());
+                    total++;
+                }
+            }
+            return total;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) {
+            return write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            return (int) write(new ByteBuffer[] { src });
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    public void testOneWritePerFlush() throws Exception {
+        WriteQueue queue = new WriteQueue(4);
+        CountingChannel channel = new CountingChannel();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            String response = "response " + i + "\n";
+            expected.append(response);
+            queue.add(ByteBuffer.wrap(response.getBytes()));
+        }
+        assertEquals(100, queue.segments());
+        assertEquals(expected.length(), queue.size());
+        assertEquals(expected.length(), queue.flush(channel));
+        assertEquals(1, channel.writes);
+        assertEquals(100, channel.maxLength);
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.segments());
+        assertEquals(expected.toString(), channel.written.toString());
+    }
+
+    @Test
+    public void testIovMax() throws Exception {
+        WriteQueue queue = new WriteQueue();
+        CountingChannel channel = new CountingChannel();
+        int count = WriteQueue.IOV_MAX * 2 + 1;
+        for (int i = 0; i < count; i++) {
+            queue.add(ByteBuffer.wrap(new byte[] { (byte) i }));
+        }
+        assertEquals(count, queue.flush(channel));
+        assertEquals(3, channel.writes);
+        assertTrue(channel.maxLength <= WriteQueue.IOV_MAX);
+        byte[] written = channel.written.toByteArray();
+        for (int i = 0; i < count; i++) {
+            assertEquals((byte) i, written[i]);
+        }
+    }
+
+    @Test
+    public void testPartialWrites() throws Exception {
+        WriteQueue queue = new WriteQueue(2);
+        CountingChannel channel = new CountingChannel();
+        RingByteBuffer ring = RingByteBuffer.allocate(8);
+        ByteBuffer first = ByteBuffer.wrap("abc".getBytes());
+        queue.add(first);
+        // Wrap the ring around its end:
+        ring.putAll(ByteBuffer.wrap("xxxxxx".getBytes()));
+        ring.getAll(ByteBuffer.allocate(6));
+        ring.putAll(ByteBuffer.wrap("defgh".getBytes()));
+        queue.add(ring);
+        queue.add(ByteBuffer.wrap("ij".getBytes()));
+        assertEquals(3, queue.segments());
+        assertEquals(10, queue.size());
+
+        channel.limit = 2;
+        assertEquals(2, queue.flush(channel));
+        assertEquals(1, first.remaining());
+        assertEquals(3, queue.segments());
+        assertEquals(8, queue.size());
+
+        channel.limit = 4;
+        assertEquals(4, queue.flush(channel));
+        // The partially written ring segment is tracked:
+        assertEquals(2, queue.segments());
+        assertEquals(2, ring.size());
+        assertEquals(4, queue.size());
+
+        // Bytes put afterwards are queued by adding the ring again:
+        ring.putAll(ByteBuffer.wrap("k".getBytes()));
+        queue.add(ByteBuffer.wrap("l".getBytes()));
+        queue.add(ring);
+        queue.add(ring);
+        assertEquals(4, queue.segments());
+        assertEquals(6, queue.size());
+
+        channel.limit = Long.MAX_VALUE;
+        assertEquals(6, queue.flush(channel));
+        assertTrue(queue.isEmpty());
+        assertEquals(0, ring.size());
+        assertEquals("abcdefghijlk", channel.written.toString());
+    }
+
+    @Test
+    public void testRingAddedManyTimes() throws Exception {
+        WriteQueue queue = new WriteQueue(2);
+        CountingChannel channel = new CountingChannel();
+        RingByteBuffer ring = RingByteBuffer.allocate(4096);
+        StringBuilder expected = new StringBuilder();
+        // Each ring add is a new segment, and only queues the bytes put since:
+        for (int i = 0; i < 1000; i++) {
+            ring.putAll(ByteBuffer.wrap("r".getBytes()));
+            queue.add(ring);
+            queue.add(ring);
+            queue.add(ByteBuffer.wrap("b".getBytes()));
+            expected.append("rb");
+        }
+        assertEquals(2000, queue.segments());
+        assertEquals(2000, queue.size());
+
+        // A partially written ring segment stays queued:
+        channel.limit = 1;
+        assertEquals(1, queue.flush(channel));
+        assertEquals(999, ring.size());
+        assertEquals(1999, queue.size());
+        ring.putAll(ByteBuffer.wrap("s".getBytes()));
+        queue.add(ring);
+        expected.append("s");
+        assertEquals(2000, queue.size());
+
+        channel.limit = Long.MAX_VALUE;
+        assertEquals(2000, queue.flush(channel));
+        assertTrue(queue.isEmpty());
+        assertEquals(expected.toString(), channel.written.toString());
+
+        // Cleared bytes are queued again by the next add:
+        ring.putAll(ByteBuffer.wrap("tu".getBytes()));
+        queue.add(ring);
+        queue.clear();
+        queue.add(ring);
+        assertEquals(2, queue.size());
+        assertEquals(2, queue.flush(channel));
+        assertEquals(expected + "tu", channel.written.toString());
+    }
+
+    @Test
+    public void testFileRegion() throws Exception {
+        Path path = Files.createTempFile("write-queue", ".txt");
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            file.write(ByteBuffer.wrap("0123456789".getBytes()));
+            WriteQueue queue = new WriteQueue();
+            CountingChannel channel = new CountingChannel();
+            queue.add(ByteBuffer.wrap("<".getBytes()))
+                .add(ByteBuffer.wrap("[".getBytes()))
+                .add(file, 2, 6)
+                .add(ByteBuffer.wrap("]".getBytes()));
+            assertEquals(9, queue.size());
+
+            // The buffers are written, then part of the file region:
+            channel.limit = 4;
+            assertEquals(6, queue.flush(channel));
+            assertEquals(2, channel.writes);
+            assertEquals(3, queue.size());
+            assertEquals(2, queue.segments());
+
+            channel.limit = Long.MAX_VALUE;
+            assertEquals(3, queue.flush(channel));
+            assertTrue(queue.isEmpty());
+            assertEquals("<[234567]", channel.written.toString());
+            // The file position is not used:
+            assertEquals(10, file.position());
+
+            queue.add(file, 8, 4);
+            assertEquals(2, queue.flush(channel));
+            assertThrows(EOFException.class, () -> queue.flush(channel));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        WriteQueue queue = new WriteQueue();
+        queue.add(ByteBuffer.allocate(10));
+        queue.add(ByteBuffer.allocate(0));
+        assertEquals(1, queue.segments());
+        queue.clear();
+        assertTrue(queue.isEmpty());
+        assertFalse(queue.segments() > 0);
+        assertEquals(0, queue.flush(new CountingChannel()));
+    }
+}